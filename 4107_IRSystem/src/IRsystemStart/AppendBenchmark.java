@@ -0,0 +1,73 @@
+package IRsystemStart;
+
+import java.util.List;
+import ir.vsr.*;
+
+/*
+ * Builds an index of the first half of the tweets of a file and appends the
+ * rest a batch at a time, merging in the background, while the 49 TREC
+ * microblog queries run between batches.  Reports how fast tweets are
+ * appended, the query latency meanwhile, how much of the top k of an index
+ * built of all the tweets at once the queries find before the last merge,
+ * and how long that merge takes.  Given a refresh threshold, the appended
+ * index keeps lazy statistics, computed afresh once that share of its
+ * tweets have changed, and the last merge computes them afresh.
+ * TestAppend checks the rankings while appending, deleting and merging.
+ * Usage: AppendBenchmark [tweet file] [query file] [batch size] [merge period ms] [k] [refresh threshold]
+ */
+public class AppendBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		long mergePeriod = args.length > 3 ? Long.parseLong(args[3]) : 200;
+		int k = args.length > 4 ? Integer.parseInt(args[4]) : InvertedIndex.MAX_RETRIEVALS;
+		double refreshThreshold = args.length > 5 ? Double.parseDouble(args[5]) : -1.0;
+
+		TweetReader reader = new TweetReader(tweetPath, true);
+		InvertedIndex batch = new InvertedIndex(reader, true, false);
+		reader.close();
+		//a document can only be tokenized once, so read the tweets again to append them;
+		List<TextStringDocument> tweets = TweetReader.readAll(tweetPath, true);
+		List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(true);
+
+		int half = tweets.size() / 2;
+		InvertedIndex index = new InvertedIndex(tweets.subList(0, half).iterator(), true, false);
+		index.setLazyStatistics(refreshThreshold >= 0.0);
+		index.statisticsRefreshThreshold = refreshThreshold;
+		index.scheduleMerges(mergePeriod);
+		long appendTime = 0, queryTime = 0, numQueries = 0, slowestBatch = 0;
+		int mostSegments = 0;
+		for (int start = half; start < tweets.size(); start += batchSize) {
+			long time = System.nanoTime();
+			index.addDocuments(tweets.subList(start, Math.min(start + batchSize, tweets.size())).iterator());
+			appendTime += System.nanoTime() - time;
+			time = System.nanoTime();
+			Benchmark.runQueries(index, queries, k);
+			time = System.nanoTime() - time;
+			queryTime += time;
+			slowestBatch = Math.max(slowestBatch, time / queries.size());
+			numQueries += queries.size();
+			mostSegments = Math.max(mostSegments, index.numSegments());
+		}
+		index.cancelMerges();
+		double overlap = 0.0;
+		for (HashMapVector query : queries) {
+			overlap += Rankings.overlap(index.retrieve(query, k), batch.retrieve(query, k));
+		}
+		long mergeTime = System.nanoTime();
+		index.mergeSegments();
+		mergeTime = System.nanoTime() - mergeTime;
+
+		System.out.println("Appended " + (tweets.size() - half) + " tweets in batches of " + batchSize + ": "
+				+ (long) ((tweets.size() - half) / (appendTime / 1e9)) + " tweets/s");
+		System.out.println("Average query latency while appending: " + queryTime / 1000.0 / numQueries + " us, "
+				+ slowestBatch / 1000.0 + " us in the slowest batch, with at most " + mostSegments + " segments");
+		System.out.println("Share of the batch index's top " + k + " found before the last merge: "
+				+ overlap / queries.size());
+		System.out.println("Last merge: " + mergeTime / 1000000 + " ms");
+	}
+}
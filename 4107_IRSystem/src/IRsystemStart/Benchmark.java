@@ -0,0 +1,126 @@
+package IRsystemStart;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import ir.vsr.HashMapVector;
+import ir.vsr.InvertedIndex;
+
+/*
+ * Runs the tasks a benchmark compares for a number of rounds, and totals the
+ * time each takes over them, and the heap it allocates on this thread and
+ * the garbage collection meanwhile.  The tasks take turns round by round so
+ * that JIT and GC effects hit all alike, and a first round is run untimed to
+ * warm up the JIT.  The checks that the tasks compared give the same results
+ * are the Test classes beside the benchmarks.
+ */
+public class Benchmark {
+
+	/*
+	 * a piece of work to time, returning a value that depends on all of it
+	 * so that the JIT cannot leave any of it out;
+	 */
+	public interface Task {
+		long run() throws Exception;
+	}
+
+	/* totals of each task over the timed rounds; */
+	public final long[] times;
+	public final long[] allocatedBytes;
+	public final long[] collections;
+	public final long[] collectionTimes;
+
+	private final int rounds;
+	private long checksum = 0;
+
+	public Benchmark(int rounds, Task... tasks) throws Exception {
+		this.rounds = rounds;
+		times = new long[tasks.length];
+		allocatedBytes = new long[tasks.length];
+		collections = new long[tasks.length];
+		collectionTimes = new long[tasks.length];
+		for (int i = -1; i < rounds; i++) {
+			for (int t = 0; t < tasks.length; t++) {
+				long start = System.nanoTime();
+				long bytes = allocatedBytes();
+				long gcs = collections();
+				long gcTime = collectionTime();
+				checksum += tasks[t].run();
+				if (i >= 0) {
+					times[t] += System.nanoTime() - start;
+					allocatedBytes[t] += allocatedBytes() - bytes;
+					collections[t] += collections() - gcs;
+					collectionTimes[t] += collectionTime() - gcTime;
+				}
+			}
+		}
+	}
+
+	/*
+	 * sum of the values the tasks returned, which only keeps their work from
+	 * being left out;
+	 */
+	public long checksum() {
+		return checksum;
+	}
+
+	/*
+	 * average microseconds a task took for each of the given number of things
+	 * it did in a round;
+	 */
+	public double averageMicros(int task, long count) {
+		return times[task] / 1000.0 / rounds / count;
+	}
+
+	/*
+	 * things a task did per second, given how many it did in a round;
+	 */
+	public long perSecond(int task, long count) {
+		return (long) (count * rounds / (times[task] / 1e9));
+	}
+
+	/*
+	 * bytes a task allocated on this thread for each of the given number of
+	 * things it did in a round;
+	 */
+	public long bytesPer(int task, long count) {
+		return allocatedBytes[task] / rounds / count;
+	}
+
+	/*
+	 * run every query once, returning the number of documents retrieved;
+	 */
+	public static long runQueries(InvertedIndex index, List<HashMapVector> queries, int k) {
+		long retrieved = 0;
+		for (HashMapVector query : queries) {
+			retrieved += index.retrieve(query, k).length;
+		}
+		return retrieved;
+	}
+
+	/*
+	 * bytes allocated by this thread so far, where the JVM can tell;
+	 */
+	public static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	private static long collections() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += collector.getCollectionCount();
+		}
+		return count;
+	}
+
+	private static long collectionTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += collector.getCollectionTime();
+		}
+		return time;
+	}
+}
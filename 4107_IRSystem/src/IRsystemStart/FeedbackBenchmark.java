@@ -0,0 +1,65 @@
+package IRsystemStart;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import ir.vsr.*;
+
+/*
+ * Expands each of the 49 TREC microblog queries by pseudo relevance
+ * feedback, rating its top tweets relevant and the next ones irrelevant,
+ * and compares the average latency of an expanded query on one thread and
+ * split across threads with that of the original queries.  TestRetrieval
+ * checks that scoring split across threads ranks the expanded queries
+ * exactly as one thread does.
+ * Usage: FeedbackBenchmark [tweet directory] [query file] [threads] [rounds] [k] [rated tweets]
+ */
+public class FeedbackBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetDir = args.length > 0 ? args[0] : root + "/tweets/";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		final int k = args.length > 4 ? Integer.parseInt(args[4]) : InvertedIndex.MAX_RETRIEVALS;
+		int rated = args.length > 5 ? Integer.parseInt(args[5]) : 10;
+
+		final InvertedIndex index = new InvertedIndex(new File(tweetDir), DocumentIterator.TYPE_TEXT, true, false);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		index.setScoringPool(pool);
+
+		final List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(index.stem);
+		final List<HashMapVector> expanded = TestRetrieval.expandQueries(index, queries, rated);
+		long numTerms = 0;
+		for (HashMapVector query : expanded) {
+			numTerms += query.size();
+		}
+
+		Benchmark benchmark = new Benchmark(rounds, new Benchmark.Task() {
+			public long run() {
+				index.setParallelScoring(false);
+				return Benchmark.runQueries(index, queries, k);
+			}
+		}, new Benchmark.Task() {
+			public long run() {
+				index.setParallelScoring(false);
+				return Benchmark.runQueries(index, expanded, k);
+			}
+		}, new Benchmark.Task() {
+			public long run() {
+				index.setParallelScoring(true);
+				return Benchmark.runQueries(index, expanded, k);
+			}
+		});
+		pool.shutdown();
+
+		System.out.println("Average expanded query: " + (double) numTerms / expanded.size() + " terms");
+		System.out.println("Average query latency, original: " + benchmark.averageMicros(0, queries.size()) + " us");
+		System.out.println("Average query latency, expanded on one thread: "
+				+ benchmark.averageMicros(1, expanded.size()) + " us");
+		System.out.println("Average query latency, expanded on " + threads + " threads: "
+				+ benchmark.averageMicros(2, expanded.size()) + " us");
+	}
+}
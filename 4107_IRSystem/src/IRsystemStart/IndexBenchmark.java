@@ -0,0 +1,121 @@
+package IRsystemStart;
+
+import java.io.File;
+import java.util.List;
+import ir.vsr.*;
+
+/*
+ * Measures the heap taken by the inverted index of the tweet directory and
+ * the average latency of the 49 TREC microblog queries against it when
+ * scoring every matching document, with MaxScore dynamic pruning, and
+ * score-at-a-time over impact-ordered postings, both exact and approximate,
+ * and how much of the top k the approximate mode gets right.  Also reports
+ * how well the postings compress and how fast they decode.  TestRetrieval
+ * checks that the exact modes rank as scoring every document does.
+ * Usage: IndexBenchmark [tweet directory] [query file] [rounds] [k]
+ */
+public class IndexBenchmark {
+
+	/* the ways of retrieving compared, as set by setMode; */
+	private static final String[] MODES = {"exhaustive", "MaxScore", "exact impact order", "approximate impact order"};
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetDir = args.length > 0 ? args[0] : root + "/tweets/";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		final int k = args.length > 3 ? Integer.parseInt(args[3]) : InvertedIndex.MAX_RETRIEVALS;
+
+		long heapBefore = usedHeap();
+		long start = System.nanoTime();
+		final InvertedIndex index = new InvertedIndex(new File(tweetDir), DocumentIterator.TYPE_TEXT, true, false);
+		long buildTime = System.nanoTime() - start;
+		long heapAfter = usedHeap();
+
+		final List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(index.stem);
+		setMode(index, MODES.length - 1);
+		double overlap = 0.0;
+		for (HashMapVector query : queries) {
+			overlap += Rankings.overlap(index.retrieve(query, k), index.retrieveExhaustive(query, k));
+		}
+		Benchmark.Task[] tasks = new Benchmark.Task[MODES.length];
+		for (int mode = 0; mode < MODES.length; mode++) {
+			final int taskMode = mode;
+			tasks[mode] = new Benchmark.Task() {
+				public long run() {
+					setMode(index, taskMode);
+					return Benchmark.runQueries(index, queries, k);
+				}
+			};
+		}
+		Benchmark modes = new Benchmark(rounds, tasks);
+
+		//compressed postings against 4 byte doc ids and counts;
+		long numPostings = 0, compressedBytes = 0;
+		for (int rank = 0; rank < index.size(); rank++) {
+			TokenInfo tokenInfo = index.getTokenInfo(index.termId(rank));
+			//tokens in every tweet stay indexed but have no postings to score;
+			if (tokenInfo == null)
+				continue;
+			numPostings += tokenInfo.numDocs;
+			compressedBytes += tokenInfo.compressedSize();
+		}
+		Benchmark decoding = new Benchmark(rounds, new Benchmark.Task() {
+			public long run() {
+				return decodeAll(index);
+			}
+		});
+
+		System.out.println("Index build time: " + (buildTime / 1000000) + " ms");
+		System.out.println("Index heap: " + ((heapAfter - heapBefore) / 1024) + " KB for "
+				+ index.docRefs.size() + " documents and " + index.size() + " terms");
+		System.out.println("Share of the exhaustive top " + k + " found by approximate impact order: "
+				+ overlap / queries.size());
+		for (int mode = 0; mode < MODES.length; mode++) {
+			System.out.println("Average query latency, " + MODES[mode] + ": "
+					+ modes.averageMicros(mode, queries.size()) + " us");
+		}
+		System.out.println("Postings: " + numPostings + " in " + (compressedBytes / 1024) + " KB compressed, ratio "
+				+ (8.0 * numPostings / compressedBytes) + " against 8 bytes each");
+		System.out.println("Decode throughput: " + decoding.perSecond(0, numPostings) / 1.0e6 + " million postings/s");
+	}
+
+	private static void setMode(InvertedIndex index, int mode) {
+		index.setDynamicPruning(mode == 1);
+		index.setImpactOrdered(mode >= 2);
+		index.setApproximateImpactOrdered(mode == 3);
+	}
+
+	/*
+	 * decode every block of every token once, returning a checksum of the postings;
+	 */
+	private static long decodeAll(InvertedIndex index) {
+		int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+		int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+		long checksum = 0;
+		for (int rank = 0; rank < index.size(); rank++) {
+			TokenInfo tokenInfo = index.getTokenInfo(index.termId(rank));
+			//tokens in every tweet stay indexed but have no postings to score;
+			if (tokenInfo == null)
+				continue;
+			for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+				int size = tokenInfo.decodeBlock(block, docIds, tfs);
+				checksum += docIds[size - 1] + tfs[size - 1];
+			}
+		}
+		return checksum;
+	}
+
+	/*
+	 * heap in use after a few rounds of garbage collection;
+	 */
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
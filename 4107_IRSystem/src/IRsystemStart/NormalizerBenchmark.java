@@ -0,0 +1,51 @@
+package IRsystemStart;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Measures how many tweets per second TweetNormalizer cleans, against the
+ * regular expressions Tokenize.removeSymboles used before.  TestNormalizer
+ * checks that the two clean every tweet identically.
+ * Usage: NormalizerBenchmark [tweet file] [rounds]
+ */
+public class NormalizerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		final List<String> tweets = new ArrayList<String>();
+		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(tweetPath)));
+		String line;
+		while ((line = input.readLine()) != null) {
+			tweets.add(line.substring(18));
+		}
+		input.close();
+
+		final TweetNormalizer normalizer = new TweetNormalizer(true);
+		Benchmark benchmark = new Benchmark(rounds, new Benchmark.Task() {
+			public long run() {
+				long length = 0;
+				for (String tweet : tweets) {
+					length += TestNormalizer.regexClean(tweet, true).length();
+				}
+				return length;
+			}
+		}, new Benchmark.Task() {
+			public long run() {
+				long length = 0;
+				for (String tweet : tweets) {
+					length += normalizer.normalize(tweet).length();
+				}
+				return length;
+			}
+		});
+
+		System.out.println("Regular expressions: " + benchmark.perSecond(0, tweets.size()) + " tweets/s");
+		System.out.println("TweetNormalizer: " + benchmark.perSecond(1, tweets.size()) + " tweets/s");
+	}
+}
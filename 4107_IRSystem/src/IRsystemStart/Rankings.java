@@ -0,0 +1,72 @@
+package IRsystemStart;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import ir.vsr.Retrieval;
+
+/*
+ * Comparisons of two rankings of the same query, by two indexes or two ways
+ * of retrieving, matching documents by name;
+ */
+public class Rankings {
+
+	/*
+	 * whether two rankings have the same documents in the same order with the same scores;
+	 */
+	public static boolean same(Retrieval[] a, Retrieval[] b) {
+		if (a.length != b.length)
+			return false;
+		for (int i = 0; i < a.length; i++) {
+			if (!a[i].docRef.name.equals(b[i].docRef.name) || a[i].score != b[i].score)
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * whether two rankings have the same scores up to rounding, and the same
+	 * documents but for the order of tied ones, as indexes that give
+	 * documents other ids order ties their own way;
+	 */
+	public static boolean close(Retrieval[] a, Retrieval[] b) {
+		if (a.length != b.length)
+			return false;
+		Map<String, Double> scores = new HashMap<String, Double>();
+		for (Retrieval retrieval : b) {
+			scores.put(retrieval.docRef.name, retrieval.score);
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (!close(a[i].score, b[i].score))
+				return false;
+			Double score = scores.get(a[i].docRef.name);
+			//a document tied with the last may be left out of either;
+			if (score == null ? !close(a[i].score, b[b.length - 1].score) : !close(a[i].score, score))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean close(double a, double b) {
+		return Math.abs(a - b) <= 1.0e-12 * Math.abs(b);
+	}
+
+	/*
+	 * share of the documents of the reference ranking that the other also has;
+	 */
+	public static double overlap(Retrieval[] retrievals, Retrieval[] reference) {
+		if (reference.length == 0)
+			return 1.0;
+		Set<String> names = new HashSet<String>();
+		for (Retrieval retrieval : retrievals) {
+			names.add(retrieval.docRef.name);
+		}
+		int found = 0;
+		for (Retrieval retrieval : reference) {
+			if (names.contains(retrieval.docRef.name))
+				found++;
+		}
+		return (double) found / reference.length;
+	}
+}
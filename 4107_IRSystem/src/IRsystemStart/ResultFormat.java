@@ -0,0 +1,69 @@
+package IRsystemStart;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/*
+ * The formats a ranked query result can be written in, one line per
+ * retrieved tweet;
+ * TREC: the run format trec_eval reads: "queryID Q0 tweetID rank score tag";
+ * TSV: tab separated, with a header line naming the columns;
+ * JSONL: one JSON object per line;
+ */
+public enum ResultFormat {
+
+	TREC {
+		public void writeLine(Writer out, String queryID, int rank, QueryResult result) throws IOException {
+			out.write(queryID + "\tQ0\t" + result.getID() + "\t" + rank + "\t" + result.getScore() + " ohlala\r\n");
+		}
+	},
+
+	TSV {
+		public void writeHeader(Writer out) throws IOException {
+			out.write("query\trank\ttweet\tscore\n");
+		}
+
+		public void writeLine(Writer out, String queryID, int rank, QueryResult result) throws IOException {
+			out.write(queryID + "\t" + rank + "\t" + result.getID() + "\t" + result.getScore() + "\n");
+		}
+	},
+
+	JSONL {
+		public void writeLine(Writer out, String queryID, int rank, QueryResult result) throws IOException {
+			out.write("{\"query\":" + jsonString(queryID) + ",\"rank\":" + rank + ",\"tweet\":"
+					+ jsonString(result.getID()) + ",\"score\":" + result.getScore() + "}\n");
+		}
+	};
+
+	/*
+	 * write whatever comes before the first line;
+	 */
+	public void writeHeader(Writer out) throws IOException {
+	}
+
+	/*
+	 * write the line for one retrieved tweet;
+	 */
+	public abstract void writeLine(Writer out, String queryID, int rank, QueryResult result) throws IOException;
+
+	/*
+	 * the string quoted and escaped as a JSON string;
+	 */
+	private static String jsonString(String string) {
+		StringBuilder result = new StringBuilder(string.length() + 2);
+		result.append('"');
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\') {
+				result.append('\\').append(c);
+			}
+			else if (c < 0x20) {
+				result.append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				result.append(c);
+			}
+		}
+		return result.append('"').toString();
+	}
+}
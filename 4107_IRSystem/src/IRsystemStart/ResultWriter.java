@@ -0,0 +1,35 @@
+package IRsystemStart;
+
+import java.io.*;
+import java.util.List;
+
+/*
+ * Writes ranked query results to a file in a ResultFormat as each query is
+ * answered, so no more than one query's results is ever held in memory;
+ */
+public class ResultWriter implements Closeable {
+
+	private BufferedWriter out;
+	private ResultFormat format;
+
+	public ResultWriter(String file_path, ResultFormat format) throws IOException {
+		this.out = new BufferedWriter(new FileWriter(file_path));
+		this.format = format;
+		format.writeHeader(this.out);
+	}
+
+	/*
+	 * write the results of one query, ranked from 1;
+	 */
+	public void write(String queryID, List<QueryResult> results) throws IOException {
+		int rank = 1;
+		for (QueryResult result : results) {
+			format.writeLine(out, queryID, rank, result);
+			rank++;
+		}
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+}
@@ -0,0 +1,64 @@
+package IRsystemStart;
+
+import java.util.List;
+import ir.vsr.*;
+
+/*
+ * Builds an index of the tweets of a file and a sharded index of the same
+ * tweets, and compares the average latency of one of the 49 TREC microblog
+ * queries run alone against each, scoring every matching tweet and with
+ * MaxScore.  TestShards checks that the two rank the queries alike.
+ * Usage: ShardBenchmark [tweet file] [query file] [shards] [rounds] [k]
+ */
+public class ShardBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int numShards = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+		final int k = args.length > 4 ? Integer.parseInt(args[4]) : InvertedIndex.MAX_RETRIEVALS;
+
+		long start = System.nanoTime();
+		TweetReader reader = new TweetReader(tweetPath, true);
+		final InvertedIndex single = new InvertedIndex(reader, true, false);
+		reader.close();
+		long singleBuild = System.nanoTime() - start;
+		start = System.nanoTime();
+		reader = new TweetReader(tweetPath, true);
+		final ShardedIndex sharded = new ShardedIndex(reader, numShards, true, false);
+		reader.close();
+		long shardedBuild = System.nanoTime() - start;
+
+		final List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(true);
+		String[] modes = {"exhaustive", "MaxScore"};
+		Benchmark.Task[] tasks = new Benchmark.Task[2 * modes.length];
+		for (int pruning = 0; pruning < modes.length; pruning++) {
+			final boolean dynamicPruning = pruning == 1;
+			tasks[2 * pruning] = new Benchmark.Task() {
+				public long run() {
+					single.setDynamicPruning(dynamicPruning);
+					return Benchmark.runQueries(single, queries, k);
+				}
+			};
+			tasks[2 * pruning + 1] = new Benchmark.Task() {
+				public long run() {
+					sharded.setDynamicPruning(dynamicPruning);
+					return Benchmark.runQueries(sharded, queries, k);
+				}
+			};
+		}
+		Benchmark benchmark = new Benchmark(rounds, tasks);
+		sharded.close();
+
+		System.out.println("Build: " + singleBuild / 1000000 + " ms single, " + shardedBuild / 1000000 + " ms in "
+				+ numShards + " shards");
+		for (int pruning = 0; pruning < modes.length; pruning++) {
+			System.out.println("Average query latency, " + modes[pruning] + ": "
+					+ benchmark.averageMicros(2 * pruning, queries.size()) + " us single, "
+					+ benchmark.averageMicros(2 * pruning + 1, queries.size()) + " us sharded");
+		}
+	}
+}
@@ -15,7 +15,11 @@ public class SystemStart {
 	public String TWEET_OUT_PATH;
 	public String QUERY_PATH;
 	public String RESULT_PATH;
+	public String INDEX_PATH;
 	public String ROOT;
+	public int QUERY_THREADS;
+	public int CACHE_SIZE;        // queries whose results search_query remembers;
+	public long CACHE_TTL_MILLIS; // how long it remembers them;
 	private List<Query> tweet_query;
 	private Boolean remove_link;
 	private InvertedIndex index;
@@ -26,6 +30,10 @@ public class SystemStart {
 		this.TWEET_OUT_PATH = this.ROOT+"/tweets/";
 		this.QUERY_PATH = this.ROOT+"/files/queries.txt";
 		this.RESULT_PATH = this.ROOT+"/result.txt";
+		this.INDEX_PATH = this.ROOT+"/files/tweets.index";
+		this.QUERY_THREADS = Runtime.getRuntime().availableProcessors();
+		this.CACHE_SIZE = 256;
+		this.CACHE_TTL_MILLIS = 10 * 60 * 1000;
 		this.tweet_query = null;
 	}
 	
@@ -51,6 +59,53 @@ public class SystemStart {
 		 this.index = new InvertedIndex(new File(this.TWEET_OUT_PATH), docType, stem, feedback);
 	}
 	
+	/**
+	 * build inverted index straight from the tweet file, one tweet at a time,
+	 * without writing each tweet to its own file as preprocess() does;
+	 * save index in variable 'this.index';
+	 */
+	public void stream_indexer() {
+		 boolean stem = true, feedback = false;
+		 try {
+			 TweetReader tweets = new TweetReader(this.TWEET_IN_PATH, stem);
+			 try {
+				 this.index = new InvertedIndex(tweets, stem, feedback);
+			 }finally {
+				 tweets.close();
+			 }
+		 }catch(IOException e) {e.printStackTrace();}
+	}
+	
+	/**
+	 * map the inverted index saved by a previous run into 'this.index',
+	 * if it is newer than the tweet file it was built from;
+	 * postings are read from the file as queries need them;
+	 * @return true if the index was loaded
+	 */
+	public boolean load_index() {
+		File indexFile = new File(this.INDEX_PATH);
+		File tweetFile = new File(this.TWEET_IN_PATH);
+		if (!indexFile.exists() || indexFile.lastModified() <= tweetFile.lastModified()) {
+			return false;
+		}
+		try {
+			this.index = new MappedInvertedIndex(indexFile, false);
+			return true;
+		}catch(IOException e) {
+			System.out.println("Could not load saved index, rebuilding: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * save the inverted index in 'this.index' for later runs;
+	 */
+	public void save_index() {
+		try {
+			this.index.save(new File(this.INDEX_PATH));
+		}catch(IOException e) {e.printStackTrace();}
+	}
+
 	/**
 	 * fetch all queries from file and fetch query messages from query frames
 	 */
@@ -64,12 +119,13 @@ public class SystemStart {
 	
 	
 	/**
-	 * retrieve results of each queries and write to file;
+	 * retrieve results of each queries, QUERY_THREADS at a time, and write to file in query order;
 	 */
 	public void retrieve_result() {
 		try{
 			 System.out.println("");
-		     WriteQueryResult result = new WriteQueryResult(tweet_query, this.index, this.RESULT_PATH);
+		     WriteQueryResult result = new WriteQueryResult(tweet_query, this.index, this.RESULT_PATH,
+		    		 ResultFormat.TREC, this.QUERY_THREADS);
 		     result.writeToFile();
 		    }catch(Exception e) {e.printStackTrace();}
 	}
@@ -80,11 +136,22 @@ public class SystemStart {
 	 * @return List of QueryResult
 	 */
 	public List<QueryResult> search_query(String query){
+		//users repeat queries, so remember recent results;
+		if (this.index.queryCache == null) {
+			this.index.queryCache = new QueryCache(this.CACHE_SIZE, this.CACHE_TTL_MILLIS);
+		}
 		List<QueryResult> result;
 		result = this.index.processQuery(query);
 		return result;
 	}
 	
+	/**
+	 * hits and misses of the cache of search_query results;
+	 */
+	public String cache_stats() {
+		return this.index.queryCache == null ? "QueryCache: not used" : this.index.queryCache.toString();
+	}
+	
 	/**
 	 * Print out an inverted index by listing each token and the documents it occurs in. 
 	 * Include info on IDF factors, occurrence counts, and document vector lengths.
@@ -105,8 +172,10 @@ public class SystemStart {
  public static void main(String[] args) throws IOException {
 	 
 	 SystemStart starter = new SystemStart();
-	 starter.preprocess();
-	 starter.indexer();
+	 if (!starter.load_index()) {
+		 starter.stream_indexer();
+		 starter.save_index();
+	 }
 	 starter.parse_query();
 	 starter.retrieve_result();
 	 
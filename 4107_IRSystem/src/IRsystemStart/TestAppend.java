@@ -0,0 +1,139 @@
+package IRsystemStart;
+
+import java.util.ArrayList;
+import java.util.List;
+import ir.vsr.*;
+
+/*
+ * Checks an index that tweets are appended to, deleted from and replaced in.
+ * Builds an index of the first half of the tweets of a file and appends the
+ * rest a batch at a time, merging in the background, and checks that
+ * MaxScore and exact impact order rank the 49 TREC microblog queries as
+ * scoring every tweet does while there are appended segments, and that
+ * after the last merge the queries rank exactly as in an index built of all
+ * the tweets at once.  Then deletes every tenth tweet and replaces every
+ * tenth other one with itself, checks the pruned modes again, and checks
+ * that after merging the queries rank as in an index built of the tweets
+ * left, up to rounding and the order of tied tweets.  Given a refresh
+ * threshold, the appended index keeps lazy statistics.  Exits with status 1
+ * if any ranking differs.
+ * Usage: TestAppend [tweet file] [query file] [batch size] [merge period ms] [k] [refresh threshold]
+ */
+public class TestAppend {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+		long mergePeriod = args.length > 3 ? Long.parseLong(args[3]) : 200;
+		int k = args.length > 4 ? Integer.parseInt(args[4]) : InvertedIndex.MAX_RETRIEVALS;
+		double refreshThreshold = args.length > 5 ? Double.parseDouble(args[5]) : -1.0;
+
+		System.out.println("Indexing " + tweetPath + "...");
+		TweetReader reader = new TweetReader(tweetPath, true);
+		InvertedIndex batch = new InvertedIndex(reader, true, false);
+		reader.close();
+		//a document can only be tokenized once, so read the tweets again to append them;
+		List<TextStringDocument> tweets = TweetReader.readAll(tweetPath, true);
+		List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(true);
+
+		int half = tweets.size() / 2;
+		InvertedIndex index = new InvertedIndex(tweets.subList(0, half).iterator(), true, false);
+		index.setLazyStatistics(refreshThreshold >= 0.0);
+		index.statisticsRefreshThreshold = refreshThreshold;
+		index.scheduleMerges(mergePeriod);
+		int mismatches = 0, checks = 0;
+		for (int start = half; start < tweets.size(); start += batchSize) {
+			index.addDocuments(tweets.subList(start, Math.min(start + batchSize, tweets.size())).iterator());
+			//every tenth batch, check the pruned modes against scoring every document;
+			if ((start - half) / batchSize % 10 == 0) {
+				mismatches += countPrunedMismatches(index, queries, k);
+				checks += 2 * queries.size();
+			}
+		}
+		index.cancelMerges();
+		System.out.println("Pruned rankings that differ from exhaustive while appending: " + mismatches + " of "
+				+ checks);
+		int failures = mismatches;
+
+		index.mergeSegments();
+		mismatches = 0;
+		for (HashMapVector query : queries) {
+			if (!Rankings.same(index.retrieve(query, k), batch.retrieve(query, k)))
+				mismatches++;
+		}
+		System.out.println("Queries whose ranking after merging differs from the batch index: " + mismatches);
+		failures += mismatches;
+
+		//delete every tenth tweet and replace every tenth other one;
+		reader = new TweetReader(tweetPath, true);
+		for (int i = 0; reader.hasNext(); i++) {
+			TextStringDocument tweet = reader.next();
+			if (i % 10 == 0)
+				index.deleteDocument(tweet.name);
+			else if (i % 10 == 5)
+				index.replaceDocument(tweet);
+		}
+		reader.close();
+		mismatches = countPrunedMismatches(index, queries, k);
+		System.out.println("Pruned rankings that differ from exhaustive after deleting: " + mismatches + " of "
+				+ 2 * queries.size());
+		failures += mismatches;
+
+		index.mergeSegments();
+		List<TextStringDocument> kept = new ArrayList<TextStringDocument>();
+		reader = new TweetReader(tweetPath, true);
+		for (int i = 0; reader.hasNext(); i++) {
+			TextStringDocument tweet = reader.next();
+			if (i % 10 != 0)
+				kept.add(tweet);
+		}
+		reader.close();
+		InvertedIndex keptBatch = new InvertedIndex(kept.iterator(), true, false);
+		mismatches = 0;
+		for (HashMapVector query : queries) {
+			if (!Rankings.close(index.retrieve(query, k), keptBatch.retrieve(query, k)))
+				mismatches++;
+		}
+		System.out.println("Queries whose ranking after deleting and merging differs from an index of the tweets left: "
+				+ mismatches);
+		failures += mismatches;
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/*
+	 * number of queries that MaxScore or exact impact order rank otherwise
+	 * than scoring every document does, counting each mode apart;
+	 */
+	private static int countPrunedMismatches(InvertedIndex index, List<HashMapVector> queries, int k) {
+		int mismatches = 0;
+		for (HashMapVector query : queries) {
+			for (int mode = 1; mode <= 2; mode++) {
+				if (!matchesExhaustive(index, query, k, mode))
+					mismatches++;
+			}
+		}
+		return mismatches;
+	}
+
+	/*
+	 * whether MaxScore (mode 1) or exact impact order (mode 2) ranks a query
+	 * as scoring every document does, asking again if a background merge
+	 * changes the exhaustive ranking meanwhile;
+	 */
+	private static boolean matchesExhaustive(InvertedIndex index, HashMapVector query, int k, int mode) {
+		while (true) {
+			Retrieval[] exhaustive = index.retrieveExhaustive(query, k);
+			index.setDynamicPruning(mode == 1);
+			index.setImpactOrdered(mode == 2);
+			Retrieval[] pruned = index.retrieve(query, k);
+			index.setDynamicPruning(false);
+			index.setImpactOrdered(false);
+			if (Rankings.same(exhaustive, index.retrieveExhaustive(query, k)))
+				return Rankings.same(pruned, exhaustive);
+		}
+	}
+}
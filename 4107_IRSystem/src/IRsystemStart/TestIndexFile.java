@@ -0,0 +1,65 @@
+package IRsystemStart;
+
+import java.io.File;
+import java.util.List;
+import ir.vsr.*;
+
+/*
+ * Checks that an index of the tweets of a file, saved to an index file,
+ * ranks the 49 TREC microblog queries exactly as the index in memory does
+ * both when loaded back into memory and when the file is mapped, scoring
+ * every matching tweet, with MaxScore and in exact impact order, for the
+ * top 10 and 1000 unless given a k.  Exits with status 1 if any ranking
+ * differs in document or score.
+ * Usage: TestIndexFile [tweet file] [query file] [k]
+ */
+public class TestIndexFile {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int[] ks = args.length > 2 ? new int[] {Integer.parseInt(args[2])} : new int[] {10, 1000};
+
+		System.out.println("Indexing " + tweetPath + "...");
+		TweetReader reader = new TweetReader(tweetPath, true);
+		InvertedIndex index = new InvertedIndex(reader, true, false);
+		reader.close();
+		List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(true);
+
+		File file = File.createTempFile("TestIndexFile", ".idx");
+		file.deleteOnExit();
+		index.save(file);
+		InvertedIndex[] saved = {InvertedIndex.load(file, false), new MappedInvertedIndex(file, false)};
+		String[] names = {"loaded", "mapped"};
+
+		int failures = 0;
+		String[] modes = {"exhaustive", "MaxScore", "exact impact order"};
+		for (int mode = 0; mode < modes.length; mode++) {
+			index.setDynamicPruning(mode == 1);
+			index.setImpactOrdered(mode == 2);
+			for (InvertedIndex other : saved) {
+				other.setDynamicPruning(mode == 1);
+				other.setImpactOrdered(mode == 2);
+			}
+			for (int k : ks) {
+				int[] mismatches = new int[saved.length];
+				for (HashMapVector query : queries) {
+					Retrieval[] retrievals = index.retrieve(query, k);
+					for (int i = 0; i < saved.length; i++) {
+						if (!Rankings.same(saved[i].retrieve(query, k), retrievals))
+							mismatches[i]++;
+					}
+				}
+				for (int i = 0; i < saved.length; i++) {
+					System.out.println("Queries whose " + modes[mode] + " top " + k + " in the " + names[i]
+							+ " index differs from memory: " + mismatches[i]);
+					failures += mismatches[i];
+				}
+			}
+		}
+		if (failures > 0)
+			System.exit(1);
+	}
+}
@@ -0,0 +1,74 @@
+package IRsystemStart;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Checks that TweetNormalizer cleans every tweet of the file as the regular
+ * expressions Tokenize.removeSymboles used before did, both removing and
+ * keeping hyperlinks.  Exits with status 1 if any tweet is cleaned
+ * differently.
+ * Usage: TestNormalizer [tweet file]
+ */
+public class TestNormalizer {
+
+	public static void main(String[] args) throws IOException {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		System.out.println("Checking the cleaning of " + tweetPath + "...");
+
+		List<String> tweets = new ArrayList<String>();
+		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(tweetPath)));
+		String line;
+		while ((line = input.readLine()) != null) {
+			tweets.add(line.substring(18));
+		}
+		input.close();
+
+		int mismatches = 0;
+		for (boolean remove_links : new boolean[] {true, false}) {
+			TweetNormalizer normalizer = new TweetNormalizer(remove_links);
+			for (String tweet : tweets) {
+				if (!normalizer.normalize(tweet).equals(regexClean(tweet, remove_links))) {
+					System.out.println("Cleaned differently: " + tweet);
+					mismatches++;
+				}
+			}
+		}
+		System.out.println("Tweets cleaned differently: " + mismatches + " of " + 2 * tweets.size());
+		if (mismatches > 0)
+			System.exit(1);
+	}
+
+	/*
+	 * the cleaning Tokenize.removeSymboles did before TweetNormalizer;
+	 */
+	static String regexClean(String _data, boolean remove_hyper_links) {
+		String lower_case = _data.toLowerCase();
+		List<String> links = new ArrayList<String>();
+		Matcher matcher = Pattern.compile("\\(?\\b(http://|www[.])[-A-Za-z0-9+&amp;@#/%?=~_()|!:,.;]*[-A-Za-z0-9+&amp;@#/%=~_()|]")
+				.matcher(lower_case);
+		while (matcher.find()) {
+			links.add(matcher.group());
+		}
+		String filter = lower_case.replaceAll("[\\[\\]{}<>^'\"“;!\\-\\+&#/%?,=~_|\\\\/:\\(\\)\\.\\*@]", "");
+		String urlPattern = "((https?|ftp|gopher|telnet|file|Unsure|http):((//)|(\\\\))+[\\w\\d:#@%/;$()~_?\\+-=\\\\\\.&]*)";
+		Matcher m = Pattern.compile(urlPattern, Pattern.CASE_INSENSITIVE).matcher(filter);
+		int i = 0;
+		while (m.find()) {
+			filter = filter.replaceAll(m.group(i), "").trim();
+			i++;
+		}
+		String result = filter.replaceAll("http.*", "");
+		if (!remove_hyper_links) {
+			for (String link : links) {
+				result = result + link + " ";
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,132 @@
+package IRsystemStart;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import ir.vsr.*;
+
+/*
+ * Checks that the ways of retrieving that promise the ranking of scoring
+ * every document keep it, on the inverted index of the tweet directory:
+ * MaxScore and exact impact order on the 49 TREC microblog queries, and
+ * scoring split across threads on the same queries expanded by pseudo
+ * relevance feedback, which rates their top tweets relevant and the next
+ * ones irrelevant.  Checks the top 10, 100 and 1000 unless given a k.
+ * Exits with status 1 if any ranking differs in document or score, if no
+ * tweets are indexed, or if a pruned mode never pruned, as when the tweets
+ * are too few for pruning to pay off.
+ * Usage: TestRetrieval [tweet directory] [query file] [threads] [k] [rated tweets]
+ */
+public class TestRetrieval {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetDir = args.length > 0 ? args[0] : root + "/tweets/";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Math.max(2, Runtime.getRuntime().availableProcessors());
+		int[] ks = args.length > 3 ? new int[] {Integer.parseInt(args[3])} : new int[] {10, 100, 1000};
+		int rated = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+
+		System.out.println("Indexing " + tweetDir + "...");
+		PruneCountingIndex index = new PruneCountingIndex(new File(tweetDir));
+		if (index.docRefs.isEmpty()) {
+			System.out.println("No tweets indexed in " + tweetDir);
+			System.exit(1);
+		}
+		List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(index.stem);
+
+		int failures = 0;
+		//the approximate impact order may rank otherwise, so is not checked;
+		String[] modes = {"MaxScore", "exact impact order"};
+		for (int mode = 0; mode < modes.length; mode++) {
+			index.setDynamicPruning(mode == 0);
+			index.setImpactOrdered(mode == 1);
+			index.prunedRetrievals = 0;
+			for (int k : ks) {
+				int mismatches = 0;
+				for (HashMapVector query : queries) {
+					if (!Rankings.same(index.retrieve(query, k), index.retrieveExhaustive(query, k)))
+						mismatches++;
+				}
+				System.out.println("Queries whose " + modes[mode] + " top " + k + " differs from exhaustive: "
+						+ mismatches);
+				failures += mismatches;
+			}
+			System.out.println("Retrievals that " + modes[mode] + " pruned: " + index.prunedRetrievals + " of "
+					+ ks.length * queries.size());
+			if (index.prunedRetrievals == 0)
+				failures++;
+		}
+		index.setDynamicPruning(false);
+		index.setImpactOrdered(false);
+
+		List<HashMapVector> expanded = expandQueries(index, queries, rated);
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		index.setScoringPool(pool);
+		for (int k : ks) {
+			int mismatches = 0;
+			for (HashMapVector query : expanded) {
+				index.setParallelScoring(false);
+				Retrieval[] single = index.retrieve(query, k);
+				index.setParallelScoring(true);
+				if (!Rankings.same(index.retrieve(query, k), single))
+					mismatches++;
+			}
+			System.out.println("Expanded queries whose top " + k + " on " + threads + " threads differs from one: "
+					+ mismatches);
+			failures += mismatches;
+		}
+		pool.shutdown();
+		if (failures > 0)
+			System.exit(1);
+	}
+
+	/*
+	 * expand each query by pseudo relevance feedback, rating its top tweets
+	 * relevant and as many after them irrelevant;
+	 */
+	static List<HashMapVector> expandQueries(InvertedIndex index, List<HashMapVector> queries, int rated) {
+		List<HashMapVector> expanded = new ArrayList<HashMapVector>();
+		for (HashMapVector query : queries) {
+			Retrieval[] retrievals = index.retrieve(query, 2 * rated);
+			Feedback feedback = new Feedback(query, retrievals, index);
+			for (int i = 0; i < retrievals.length; i++) {
+				if (i < rated)
+					feedback.addGood(retrievals[i].docRef);
+				else
+					feedback.addBad(retrievals[i].docRef);
+			}
+			expanded.add(feedback.newQuery());
+		}
+		return expanded;
+	}
+
+	/*
+	 * an index of a tweet directory that counts the retrievals MaxScore or
+	 * impact order rank, rather than leaving them to scoring every tweet;
+	 */
+	private static class PruneCountingIndex extends InvertedIndex {
+
+		int prunedRetrievals;
+
+		PruneCountingIndex(File tweetDir) {
+			super(tweetDir, DocumentIterator.TYPE_TEXT, true, false);
+		}
+
+		protected Retrieval[] retrieveMaxScore(HashMapVector vector, int k) {
+			return counted(super.retrieveMaxScore(vector, k));
+		}
+
+		protected Retrieval[] retrieveImpactOrdered(HashMapVector vector, int k) {
+			return counted(super.retrieveImpactOrdered(vector, k));
+		}
+
+		private Retrieval[] counted(Retrieval[] retrievals) {
+			if (retrievals != null)
+				prunedRetrievals++;
+			return retrievals;
+		}
+	}
+}
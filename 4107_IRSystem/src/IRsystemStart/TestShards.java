@@ -0,0 +1,49 @@
+package IRsystemStart;
+
+import java.util.List;
+import ir.vsr.*;
+
+/*
+ * Checks that an index of the tweets of a file split into shards ranks the
+ * 49 TREC microblog queries as an index of all of them does, up to rounding
+ * and the order of tied tweets, both scoring every matching tweet and with
+ * MaxScore.  Checks the top 10, 100 and 1000 unless given a k.  Exits with
+ * status 1 if any ranking differs.
+ * Usage: TestShards [tweet file] [query file] [shards] [k]
+ */
+public class TestShards {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		String queryPath = args.length > 1 ? args[1] : root + "/files/queries.txt";
+		int numShards = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+		int[] ks = args.length > 3 ? new int[] {Integer.parseInt(args[3])} : new int[] {10, 100, 1000};
+
+		System.out.println("Indexing " + tweetPath + "...");
+		TweetReader reader = new TweetReader(tweetPath, true);
+		InvertedIndex single = new InvertedIndex(reader, true, false);
+		reader.close();
+		reader = new TweetReader(tweetPath, true);
+		ShardedIndex sharded = new ShardedIndex(reader, numShards, true, false);
+		reader.close();
+		List<HashMapVector> queries = new TweetQueryParser(queryPath).parseTestQueryVectors(true);
+
+		int mismatches = 0;
+		for (boolean pruning : new boolean[] {false, true}) {
+			sharded.setDynamicPruning(pruning);
+			for (int k : ks) {
+				for (HashMapVector query : queries) {
+					if (!Rankings.close(sharded.retrieve(query, k), single.retrieve(query, k)))
+						mismatches++;
+				}
+			}
+		}
+		sharded.close();
+		System.out.println("Rankings in " + numShards + " shards that differ from the single index: " + mismatches
+				+ " of " + 2 * ks.length * queries.size());
+		if (mismatches > 0)
+			System.exit(1);
+	}
+}
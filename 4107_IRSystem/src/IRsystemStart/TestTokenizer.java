@@ -0,0 +1,96 @@
+package IRsystemStart;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.StringTokenizer;
+import ir.vsr.Document;
+import ir.vsr.TextStringDocument;
+
+/*
+ * Checks that Document tokenizes every tweet of the file into the same
+ * tokens as the StringTokenizer and toLowerCase filtering it used before,
+ * both as written and as cleaned by TweetNormalizer, with and without
+ * stemming.  Exits with status 1 if any token stream differs.
+ * Usage: TestTokenizer [tweet file]
+ */
+public class TestTokenizer {
+
+	public static void main(String[] args) throws IOException {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		System.out.println("Checking tokens of " + tweetPath + "...");
+
+		List<String> rawTweets = new ArrayList<String>();
+		List<String> tweets = new ArrayList<String>();
+		TweetNormalizer normalizer = new TweetNormalizer(true);
+		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(tweetPath)));
+		String line;
+		while ((line = input.readLine()) != null) {
+			rawTweets.add(line.substring(18));
+			tweets.add(normalizer.normalize(line.substring(18)));
+		}
+		input.close();
+
+		int mismatches = 0;
+		for (boolean stem : new boolean[] {false, true}) {
+			for (List<String> texts : Arrays.asList(rawTweets, tweets)) {
+				for (String text : texts) {
+					Document doc = new TextStringDocument(text, stem);
+					Document reference = new StringTokenizerDocument(text, stem);
+					while (doc.hasMoreTokens() || reference.hasMoreTokens()) {
+						String token = doc.nextToken();
+						if (token == null || !token.equals(reference.nextToken())) {
+							System.out.println("Tokens differ for: " + text);
+							mismatches++;
+							break;
+						}
+					}
+				}
+			}
+		}
+		System.out.println("Token streams that differ: " + mismatches + " of " + 4 * tweets.size());
+		if (mismatches > 0)
+			System.exit(1);
+	}
+
+	/*
+	 * a document tokenized as Document did before CharTokenizer: a String
+	 * for every candidate token, lower cased before it is checked;
+	 */
+	static class StringTokenizerDocument extends Document {
+
+		private StringTokenizer candidates;
+
+		StringTokenizerDocument(String string, boolean stem) {
+			super(stem);
+			candidates = new StringTokenizer(string, TextStringDocument.tokenizerDelim);
+			prepareNextToken();
+		}
+
+		protected String getNextCandidateToken() {
+			if (!candidates.hasMoreTokens())
+				return null;
+			return candidates.nextToken();
+		}
+
+		protected void prepareNextToken() {
+			do {
+				nextToken = getNextCandidateToken();
+				if (nextToken == null)
+					return;
+				nextToken = nextToken.toLowerCase();
+				if (stopWords.contains(nextToken) || !allLetters(nextToken))
+					nextToken = null;
+				else if (stem) {
+					nextToken = stemmer.stripAffixes(nextToken);
+					if (stopWords.contains(nextToken))
+						nextToken = null;
+				}
+			}
+			while (nextToken == null);
+		}
+	}
+}
@@ -3,8 +3,6 @@ package IRsystemStart;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 
 /*
  * The interface takes an input data path, which should be a document file,
@@ -22,11 +20,13 @@ public class Tokenize {
 		private String outout_path;
 		private String [] tweetData;
 		private boolean remove_hyper_links = true;
+		private TweetNormalizer normalizer;
 		
 		public Tokenize(String data_path, String output_path) throws IOException{
 			
 			this.file_path = data_path;
 			this.outout_path = output_path;
+			this.normalizer = new TweetNormalizer(this.remove_hyper_links);
 			
 			//read tweet;
 			tweetData = this.getLines(file_path);
@@ -38,13 +38,13 @@ public class Tokenize {
 			this.file_path = data_path;
 			this.outout_path = output_path;
 			this.remove_hyper_links = hyper_link_remove;
+			this.normalizer = new TweetNormalizer(this.remove_hyper_links);
 			//read tweet;
 			tweetData = this.getLines(file_path);
 			System.out.println("Searching the file path;");
 		}
 		
 		
-		
 		public void tokenize() throws IOException{
 			
 			//error checking
@@ -92,34 +92,8 @@ public class Tokenize {
 		}
 		
 		
-		/*
-		 * remove hyperlinks in the input string;
-		 */
-		private String removeHyperLink(String input){
-	        String urlPattern = "((https?|ftp|gopher|telnet|file|Unsure|http):((//)|(\\\\))+[\\w\\d:#@%/;$()~_?\\+-=\\\\\\.&]*)";
-	        Pattern p = Pattern.compile(urlPattern,Pattern.CASE_INSENSITIVE);
-	        Matcher m = p.matcher(input);
-	        int i = 0;
-	        while (m.find()) {
-	            input = input.replaceAll(m.group(i),"").trim();
-	            i++;
-	        }
-	        return input;
-	    }
-		
 		public List<String> getHyperLink(String input){
-	        
-	        List<String> list = new ArrayList<String>();
-	        Pattern pattern = Pattern.compile("\\(?\\b(http://|www[.])[-A-Za-z0-9+&amp;@#/%?=~_()|!:,.;]*[-A-Za-z0-9+&amp;@#/%=~_()|]");
-	        Matcher matcher = pattern.matcher(input);   
-	        int counter = 0;
-	        while (matcher.find())
-	        {
-	            //System.out.println(matcher.group());
-	            list.add(matcher.group());
-	            counter++;
-	        }
-	        return list;
+	        return TweetNormalizer.getHyperLinks(input);
 	    }
 	    
 		
@@ -129,22 +103,7 @@ public class Tokenize {
 		 * returns a String with special characters and links removed;
 		 */
 		public String removeSymboles(String _data){
-			
-			String lower_case = _data.toLowerCase();
-			//Store links;
-			List<String> links = this.getHyperLink(lower_case);
-			String filter = lower_case.replaceAll("[\\[\\]{}<>^'\"“;!\\-\\+&#/%?,=~_|\\\\/:\\(\\)\\.\\*@]", "");
-			String temp = removeHyperLink(filter);
-			String result = temp.replaceAll("http.*", "");
-			
-			if(! this.remove_hyper_links) {
-				//if false, put links back;
-				for(String link: links) {
-					result = result + link + " ";
-				}
-			}
-//			System.out.println(result);
-			return result;
+			return this.normalizer.normalize(_data);
 		}
 
 	
@@ -0,0 +1,65 @@
+package IRsystemStart;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import ir.vsr.Document;
+import ir.vsr.TextStringDocument;
+
+/*
+ * Measures how many tokens per second Document produces from the cleaned
+ * tweets of the file, against the StringTokenizer and toLowerCase filtering
+ * it used before.  TestTokenizer checks that the two produce the same tokens.
+ * Usage: TokenizerBenchmark [tweet file] [rounds]
+ */
+public class TokenizerBenchmark {
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+		final List<String> tweets = new ArrayList<String>();
+		TweetNormalizer normalizer = new TweetNormalizer(true);
+		BufferedReader input = new BufferedReader(new InputStreamReader(new FileInputStream(tweetPath)));
+		String line;
+		while ((line = input.readLine()) != null) {
+			tweets.add(normalizer.normalize(line.substring(18)));
+		}
+		input.close();
+		long numTokens = 0;
+		for (String tweet : tweets) {
+			numTokens += countTokens(new TextStringDocument(tweet, false));
+		}
+
+		Benchmark benchmark = new Benchmark(rounds, new Benchmark.Task() {
+			public long run() {
+				long count = 0;
+				for (String tweet : tweets) {
+					count += countTokens(new TestTokenizer.StringTokenizerDocument(tweet, false));
+				}
+				return count;
+			}
+		}, new Benchmark.Task() {
+			public long run() {
+				long count = 0;
+				for (String tweet : tweets) {
+					count += countTokens(new TextStringDocument(tweet, false));
+				}
+				return count;
+			}
+		});
+
+		System.out.println("StringTokenizer: " + benchmark.perSecond(0, numTokens) + " tokens/s");
+		System.out.println("CharTokenizer: " + benchmark.perSecond(1, numTokens) + " tokens/s");
+	}
+
+	private static int countTokens(Document doc) {
+		int count = 0;
+		while (doc.nextToken() != null) {
+			count++;
+		}
+		return count;
+	}
+}
@@ -0,0 +1,95 @@
+package IRsystemStart;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+ * Cleans a tweet in a single pass over its characters: lower cases it,
+ * removes special characters, and then removes everything from "http" to the
+ * end of the line, exactly as the regular expressions Tokenize used to apply;
+ * Hyperlinks can be put back at the end of the tweet, as a user's wish;
+ * keeps no state between tweets, so one normalizer can be shared by threads;
+ */
+public class TweetNormalizer {
+
+	//special characters removed from tweets, flagged by character;
+	private static final boolean[] SYMBOLS = new boolean[128];
+	static {
+		for (char c : "[]{}<>^'\";!-+&#/%?,=~_|\\:().*@".toCharArray()) {
+			SYMBOLS[c] = true;
+		}
+	}
+	//the one special character outside ASCII: a left double quotation mark;
+	private static final char LEFT_QUOTE = '\u201c';
+
+	private static final Pattern HYPER_LINK =
+			Pattern.compile("\\(?\\b(http://|www[.])[-A-Za-z0-9+&amp;@#/%?=~_()|!:,.;]*[-A-Za-z0-9+&amp;@#/%=~_()|]");
+
+	private boolean remove_hyper_links;
+
+	public TweetNormalizer(boolean remove_hyper_links) {
+		this.remove_hyper_links = remove_hyper_links;
+	}
+
+	/* @param: String data;
+	 * Takes a String contains special characters and hyperlinks;
+	 * returns a String with special characters and links removed;
+	 */
+	public String normalize(String data) {
+		String lower_case = data.toLowerCase();
+		StringBuilder result = new StringBuilder(lower_case.length());
+		//true from an "http" to the end of its line;
+		boolean in_link = false;
+		for (int i = 0; i < lower_case.length(); i++) {
+			char c = lower_case.charAt(i);
+			if (isLineTerminator(c)) {
+				in_link = false;
+				result.append(c);
+				continue;
+			}
+			if (in_link || isSymbol(c)) {
+				continue;
+			}
+			result.append(c);
+			//"http" is looked for after symbols are removed, so "ht-tp" counts too;
+			int length = result.length();
+			if (c == 'p' && length >= 4 && result.charAt(length - 2) == 't'
+					&& result.charAt(length - 3) == 't' && result.charAt(length - 4) == 'h') {
+				result.setLength(length - 4);
+				in_link = true;
+			}
+		}
+		if (!remove_hyper_links) {
+			//put links back;
+			for (String link : getHyperLinks(lower_case)) {
+				result.append(link).append(' ');
+			}
+		}
+		return result.toString();
+	}
+
+	/*
+	 * the hyperlinks in the input string;
+	 */
+	public static List<String> getHyperLinks(String input) {
+		List<String> list = new ArrayList<String>();
+		Matcher matcher = HYPER_LINK.matcher(input);
+		while (matcher.find()) {
+			list.add(matcher.group());
+		}
+		return list;
+	}
+
+	private static boolean isSymbol(char c) {
+		return c < 128 ? SYMBOLS[c] : c == LEFT_QUOTE;
+	}
+
+	/*
+	 * the characters that end a line for the '.' of a regular expression;
+	 */
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+}
@@ -7,6 +7,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
+import ir.vsr.HashMapVector;
+import ir.vsr.TextStringDocument;
 
 
 public class TweetQueryParser {
@@ -57,6 +59,18 @@ public class TweetQueryParser {
 		System.out.println("Finish parsing 49 quries.");
 		return result;
 	}
+
+	/*
+	 * parse the test queries into term vectors, tokenized as tweets are,
+	 * leaving out tokens not yet indexed, so parse them after indexing;
+	 */
+	public List<HashMapVector> parseTestQueryVectors(boolean stem) throws IOException {
+		List<HashMapVector> vectors = new ArrayList<HashMapVector>();
+		for (Query query : parseTestQueries()) {
+			vectors.add(new TextStringDocument(query.getQuery(), stem).queryVector());
+		}
+		return vectors;
+	}
 	
 	
 	/*
@@ -0,0 +1,74 @@
+package IRsystemStart;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import ir.vsr.TextStringDocument;
+
+/*
+ * Streams the tweets of a tweet file one line at a time, as documents named
+ * by tweet id with special characters and hyperlinks removed just as
+ * Tokenize does, so they can be indexed without writing each tweet to a file;
+ */
+public class TweetReader implements Iterator<TextStringDocument>, Closeable {
+
+	private BufferedReader input;
+	private String nextLine;
+	private TweetNormalizer normalizer;
+	private boolean stem;
+
+	public TweetReader(String data_path, boolean stem) throws IOException {
+		this.input = new BufferedReader(new InputStreamReader(new FileInputStream(data_path)));
+		this.normalizer = new TweetNormalizer(true);
+		this.stem = stem;
+		this.nextLine = input.readLine();
+	}
+
+	public boolean hasNext() {
+		return nextLine != null;
+	}
+
+	/*
+	 * the next tweet, named by its id;
+	 */
+	public TextStringDocument next() {
+		if (nextLine == null) {
+			throw new NoSuchElementException();
+		}
+		String tweet = nextLine;
+		try {
+			nextLine = input.readLine();
+			if (nextLine == null) {
+				input.close();
+			}
+		}catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		//retrive tweet id and tweet string, as Tokenize does;
+		String id = tweet.substring(0, 17);
+		String data = tweet.substring(18);
+		return new TextStringDocument(id, normalizer.normalize(data), stem);
+	}
+
+	public void close() throws IOException {
+		input.close();
+	}
+
+	/*
+	 * every tweet of a tweet file, as next() makes them;
+	 */
+	public static List<TextStringDocument> readAll(String data_path, boolean stem) throws IOException {
+		List<TextStringDocument> tweets = new ArrayList<TextStringDocument>();
+		TweetReader reader = new TweetReader(data_path, stem);
+		try {
+			while (reader.hasNext()) {
+				tweets.add(reader.next());
+			}
+		}finally {
+			reader.close();
+		}
+		return tweets;
+	}
+}
@@ -0,0 +1,107 @@
+package IRsystemStart;
+
+import java.util.ArrayList;
+import java.util.List;
+import ir.classifiers.Example;
+import ir.classifiers.NaiveBayes;
+import ir.vsr.*;
+
+/*
+ * Measures the time, heap allocation and garbage collection spent on term
+ * vectors when indexing the tweet file and when training and testing the
+ * Naive Bayes classifier on its tweets.  The tweets have no categories of
+ * their own, so each is put in one of three by its id; the accuracy is
+ * meaningless, only the work on vectors counts.  Then times the cosine
+ * similarity of every pair of the first tweets, as HashMapVectors and as
+ * SparseVectors.
+ * Usage: VectorBenchmark [tweet file] [rounds]
+ */
+public class VectorBenchmark {
+
+	/* number of tweets compared pairwise; */
+	private static final int PAIRWISE_TWEETS = 2000;
+
+	public static void main(String[] args) throws Exception {
+
+		String root = System.getProperty("user.dir");
+		final String tweetPath = args.length > 0 ? args[0] : root + "/files/twitter_blog.txt";
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		//the examples classified in a round, which the pairwise comparisons reuse;
+		final List<Example> examples = new ArrayList<Example>();
+		final List<HashMapVector> compared = new ArrayList<HashMapVector>();
+		final List<SparseVector> sparseCompared = new ArrayList<SparseVector>();
+		final int[] sizes = new int[2];
+		Benchmark benchmark = new Benchmark(rounds, new Benchmark.Task() {
+			public long run() throws Exception {
+				TweetReader tweets = new TweetReader(tweetPath, true);
+				//measure all the work on this thread;
+				InvertedIndex index = new InvertedIndex(tweets, true, false, 1);
+				tweets.close();
+				sizes[0] = index.docRefs.size();
+				return index.size();
+			}
+		}, new Benchmark.Task() {
+			public long run() throws Exception {
+				examples.clear();
+				TweetReader tweets = new TweetReader(tweetPath, true);
+				while (tweets.hasNext()) {
+					TextStringDocument doc = tweets.next();
+					int category = (int) (Long.parseLong(doc.name.trim()) % 3);
+					examples.add(new Example(doc.hashMapVector(), category, doc.name, null));
+				}
+				tweets.close();
+				int split = examples.size() * 9 / 10;
+				NaiveBayes classifier = new NaiveBayes(new String[] {"a", "b", "c"}, false);
+				classifier.train(examples.subList(0, split));
+				int correct = 0;
+				for (Example example : examples.subList(split, examples.size())) {
+					if (classifier.test(example))
+						correct++;
+				}
+				//tweets left empty by stopword removal have no angle to compare;
+				compared.clear();
+				sparseCompared.clear();
+				for (int j = 0; j < examples.size() && compared.size() < PAIRWISE_TWEETS; j++) {
+					HashMapVector vector = examples.get(j).getHashMapVector();
+					if (vector.size() > 0) {
+						compared.add(vector);
+						sparseCompared.add(new SparseVector(vector));
+					}
+				}
+				sizes[1] = examples.size();
+				return correct;
+			}
+		}, new Benchmark.Task() {
+			public long run() {
+				double sum = 0;
+				for (HashMapVector x : compared) {
+					for (HashMapVector y : compared) {
+						sum += x.cosineTo(y);
+					}
+				}
+				return (long) sum;
+			}
+		}, new Benchmark.Task() {
+			public long run() {
+				double sum = 0;
+				for (SparseVector x : sparseCompared) {
+					for (SparseVector y : sparseCompared) {
+						sum += x.cosineTo(y);
+					}
+				}
+				return (long) sum;
+			}
+		});
+
+		String[] tasks = {"Indexing " + sizes[0] + " tweets", "Classifying " + sizes[1] + " tweets",
+				"Comparing " + compared.size() + " tweets pairwise as HashMapVectors",
+				"Comparing " + compared.size() + " tweets pairwise as SparseVectors"};
+		for (int t = 0; t < tasks.length; t++) {
+			System.out.println(tasks[t] + ": " + benchmark.times[t] / rounds / 1000000 + " ms, "
+					+ benchmark.allocatedBytes[t] / rounds / (1024 * 1024) + " MB allocated, "
+					+ (double) benchmark.collections[t] / rounds + " GCs taking "
+					+ benchmark.collectionTimes[t] / rounds + " ms a round");
+		}
+	}
+}
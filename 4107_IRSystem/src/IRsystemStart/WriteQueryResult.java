@@ -1,7 +1,10 @@
 package IRsystemStart;
 
 import java.io.*;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.*;
 import ir.vsr.InvertedIndex;
 
 public class WriteQueryResult {
@@ -9,70 +12,104 @@ public class WriteQueryResult {
 	private InvertedIndex indexer; // InvertedIndex object, which contains indexed file;
 	private List<Query> queries;  // tweet queries;
 	private String file_path;
+	private ResultFormat format;
+	private int threads;  // number of queries answered at once;
 
 	public WriteQueryResult(List<Query> queries, InvertedIndex index, String file) {
+		this(queries, index, file, ResultFormat.TREC, 1);
+	}
+
+	public WriteQueryResult(List<Query> queries, InvertedIndex index, String file, ResultFormat format) {
+		this(queries, index, file, format, 1);
+	}
+
+	/*
+	 * answers queries on the given number of threads; the index must not
+	 * change while they run;
+	 */
+	public WriteQueryResult(List<Query> queries, InvertedIndex index, String file, ResultFormat format, int threads) {
 		
 		this.indexer = index;
 		this.queries = queries;
 		this.file_path = file;
+		this.format = format;
+		this.threads = threads;
 	}
 	
 	
 	/*
 	 * process each query, format of each line in this.queries is: "queryID, query";
-	 * retrieve result and write into file;
+	 * retrieve result and write into file as soon as each query is answered;
 	 */
 	public void writeToFile() throws IOException{
 		
 		System.out.println("Now retrive top 1000 results from each query.");
 		System.out.println("Please wait...");
 		
-		String queryID = "";
-
-		//testquery number	0		tweetid			rank
-		String out = "";
-		List<QueryResult> result;
-		
-		for(Query line: this.queries) {
-
-			queryID = line.getID();	//"MBxxx"
-			result = this.indexer.processQuery(line.getQuery());
-		
-			
-			int i=1;
-			String temp = "";
-			//go through each tweet retreived
-			for(QueryResult line2 : result){
-
-				//build output line
-				temp += queryID+"\tQ0\t"+line2.getID()+"\t"+i+"\t"+line2.getScore()+" ohlala\r\n";
-				i++;
-		
-			}//end for one query;
-			
-			out += temp;
-			//clear local variables;
-			queryID = "";
+		ResultWriter out = new ResultWriter(this.file_path, this.format);
+		try {
+			if (this.threads <= 1) {
+				for(Query line: this.queries) {
+					//"MBxxx"
+					out.write(line.getID(), this.indexer.processQuery(line.getQuery()));
+				}
+			}
+			else {
+				writeConcurrently(out);
+			}
+		}finally {
+			out.close();
 		}
 		
-		this.write(out);
-		
+		System.out.println("Finish writing.");
+		System.out.println("The result file is in: "+this.file_path+"\n");
 	}
 	
-	private void write(String input) throws IOException {
-		
-		System.out.println("\nNow start writing...");
+	/*
+	 * answer queries on a pool of this.threads threads, and write the results
+	 * of each in query order as soon as it and all queries before it are answered;
+	 * only a few queries per thread are answered ahead of the one being written;
+	 */
+	private void writeConcurrently(ResultWriter out) throws IOException {
 		
-		File file = new File(this.file_path);
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
 		try {
-			file.createNewFile();
-			} catch(Exception e) {}
-		BufferedWriter out = new BufferedWriter(new FileWriter(file));
-		out.write(input);
-		out.flush();
-		out.close();
-		
-		System.out.println("Finish writing.");
-		System.out.println("The result file is in: "+this.file_path+"\n");
+			Deque<Query> pending_queries = new ArrayDeque<Query>();
+			Deque<Future<List<QueryResult>>> pending_results = new ArrayDeque<Future<List<QueryResult>>>();
+			for(final Query line: this.queries) {
+				pending_queries.addLast(line);
+				pending_results.addLast(executor.submit(new Callable<List<QueryResult>>() {
+					public List<QueryResult> call() {
+						return indexer.processQuery(line.getQuery());
+					}
+				}));
+				if (pending_results.size() > 2 * this.threads) {
+					out.write(pending_queries.removeFirst().getID(), await(pending_results.removeFirst()));
+				}
+			}
+			while (!pending_results.isEmpty()) {
+				out.write(pending_queries.removeFirst().getID(), await(pending_results.removeFirst()));
+			}
+		}finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	/*
+	 * the results of a query answered on the pool, rethrowing whatever it threw;
+	 */
+	private static List<QueryResult> await(Future<List<QueryResult>> result) throws IOException {
+		try {
+			return result.get();
+		}catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while answering queries");
+		}catch(ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw new IOException(e.getCause());
+		}
 	}
 }
@@ -1,7 +1,5 @@
 package ir.classifiers;
 
-import java.util.*;
-
 /**
  * An object to hold the result of training a NaiveBayes classifier.
  * Stores the class priors and the counts of features in each class.
@@ -16,10 +14,11 @@ public class BayesResult {
   protected double[] classPriors;
 
   /**
-   * Stores the counts for each feature: an entry in the hashTable stores
-   * the array of class counts for a feature
+   * Stores the counts for each feature: the entry for the id of a token in
+   * TermDictionary.GLOBAL stores the array of class counts for that feature,
+   * and is null for tokens that are not features
    */
-  protected Hashtable<String, double[]> featureTable;
+  protected double[][] featureTable;
 
   /**
    * Sets the class priors
@@ -38,14 +37,14 @@ public class BayesResult {
   /**
    * Sets the feature hash
    */
-  public void setFeatureTable(Hashtable<String, double[]> table) {
+  public void setFeatureTable(double[][] table) {
     featureTable = table;
   }
 
   /**
    * Returns the feature hash
    */
-  public Hashtable<String, double[]> getFeatureTable() {
+  public double[][] getFeatureTable() {
     return (featureTable);
   }
 }
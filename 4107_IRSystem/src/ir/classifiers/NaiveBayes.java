@@ -191,9 +191,11 @@ public class NaiveBayes extends Classifier {
    *
    * @param trainExamples The training examples from which counts will be estimated
    */
-  protected Hashtable<String, double[]> conditionalProbs(List<Example> trainExamples) {
-    // Initialize hashtable giving conditional prob of each class given a feature
-    Hashtable<String, double[]> featureHash = new Hashtable<String, double[]>();
+  protected double[][] conditionalProbs(List<Example> trainExamples) {
+    // Initialize table giving conditional prob of each class given a feature,
+    // indexed by token id
+    double[][] featureTable = new double[TermDictionary.GLOBAL.size()][];
+    numFeatures = 0;
     double[] totalCounts = new double[numCategories]; // stores total count of all features in each category
 
     for (int i = 0; i < numCategories; i++)
@@ -202,24 +204,27 @@ public class NaiveBayes extends Classifier {
     for (Example currentExample : trainExamples) {
       if (debug) {
         System.out.println("\nExample: " + currentExample);
-        System.out.println("Number of tokens: " + currentExample.getHashMapVector().hashMap.size());
+        System.out.println("Number of tokens: " + currentExample.getHashMapVector().size());
       }
-      for (Map.Entry<String, Weight> entry : currentExample.getHashMapVector().entrySet()) {
-        // An entry in the HashMap maps a token to a Weight
-        String token = entry.getKey();
-        // The count for the token is in the value of the Weight value
-        int count = (int) entry.getValue().getValue();
+      HashMapVector vector = currentExample.getHashMapVector();
+      for (int i = 0; i < vector.size(); i++) {
+        int termId = vector.termIdAt(i);
+        // The count for the token is its weight in the vector
+        int count = (int) vector.weightAt(i);
         double[] countArray; // stores counts for current feature
         if (debug)
-          System.out.println("Counts of token: " + token);
-        if (!featureHash.containsKey(token)) {
+          System.out.println("Counts of token: " + vector.tokenAt(i));
+        if (termId >= featureTable.length)
+          featureTable = Arrays.copyOf(featureTable, Math.max(termId + 1, TermDictionary.GLOBAL.size()));
+        if (featureTable[termId] == null) {
           countArray = new double[numCategories]; //create a new array
           for (int m = 0; m < numCategories; m++)
             countArray[m] = 0.0; //init to 0
-          featureHash.put(token, countArray); //add to hashtable
+          featureTable[termId] = countArray; //add to table
+          numFeatures++;
         } else {
-          // retrieve existing array from hashtable
-          countArray = featureHash.get(token);
+          // retrieve existing array from table
+          countArray = featureTable[termId];
         }
         countArray[currentExample.getCategory()] += count;
         totalCounts[currentExample.getCategory()] += count;
@@ -230,14 +235,14 @@ public class NaiveBayes extends Classifier {
         }
       }
     }
-    numFeatures = featureHash.size();
     //We can now compute the log probabilities
     if (debug) {
       System.out.println("\nLog Probs before multiplying priors...\n");
     }
-    for (Map.Entry<String, double[]> entry : featureHash.entrySet()) {
-      String token = entry.getKey();
-      double[] countArray = entry.getValue();
+    for (int termId = 0; termId < featureTable.length; termId++) {
+      double[] countArray = featureTable[termId];
+      if (countArray == null)
+        continue;
       for (int j = 0; j < numCategories; j++) {
         if (isLaplace) //Laplace smoothing
           countArray[j] = (countArray[j] + 1) / (totalCounts[j] + numFeatures);
@@ -250,13 +255,13 @@ public class NaiveBayes extends Classifier {
         countArray[j] = Math.log(countArray[j]); //take log of probability
       }
       if (debug) {
-        System.out.println("Log probs of " + token);
+        System.out.println("Log probs of " + TermDictionary.GLOBAL.term(termId));
         for (int k = 0; k < countArray.length; k++)
           System.out.print(countArray[k] + " ");
         System.out.println();
       }
     }
-    return (featureHash);
+    return (featureTable);
   }
 
   /**
@@ -268,14 +273,14 @@ public class NaiveBayes extends Classifier {
   protected double[] calculateProbs(Example testExample) {
     //set initial probabilities to the prior probs
     double[] probs = trainResult.getClassPriors().clone();
-    Hashtable<String, double[]> hashTable = trainResult.getFeatureTable();
-    for (Map.Entry<String, Weight> entry : testExample.getHashMapVector().entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The count for the token is in the value of the Weight
-      int count = (int) entry.getValue().getValue();
-      if (hashTable.containsKey(token)) {//ignore unknowns
-        double[] countArray = hashTable.get(token); // stores the category array for one token
+    double[][] featureTable = trainResult.getFeatureTable();
+    HashMapVector vector = testExample.getHashMapVector();
+    for (int i = 0; i < vector.size(); i++) {
+      int termId = vector.termIdAt(i);
+      // The count for the token is its weight in the vector
+      int count = (int) vector.weightAt(i);
+      if (termId < featureTable.length && featureTable[termId] != null) {//ignore unknowns
+        double[] countArray = featureTable[termId]; // stores the category array for one token
         for (int k = 0; k < numCategories; k++)
           probs[k] += count * countArray[k];//multiplying the probs == adding the logs
       }
@@ -287,14 +292,15 @@ public class NaiveBayes extends Classifier {
    * Displays the probs for each feature in the different categories
    *
    * @param classPriors Prior probs
-   * @param featureHash Feature hashtable after training
+   * @param featureTable Feature table after training, indexed by token id
    */
-  protected void displayProbs(double[] classPriors, Hashtable<String, double[]> featureHash) {
+  protected void displayProbs(double[] classPriors, double[][] featureTable) {
     System.out.println("\nAfter multiplying priors...");
-    for (Map.Entry<String, double[]> entry : featureHash.entrySet()) {
-      String token = entry.getKey();
-      double[] probs = entry.getValue();
-      System.out.print("\nFeature: " + token + ", Probs: ");
+    for (int termId = 0; termId < featureTable.length; termId++) {
+      double[] probs = featureTable[termId];
+      if (probs == null)
+        continue;
+      System.out.print("\nFeature: " + TermDictionary.GLOBAL.term(termId) + ", Probs: ");
       for (int num = 0; num < probs.length; num++) {
         //double posterior = classPriors[num]+probs[num];
         double posterior = Math.pow(Math.E, classPriors[num] + probs[num]);
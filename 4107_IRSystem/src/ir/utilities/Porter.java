@@ -1,408 +1,452 @@
 package ir.utilities;
 
 import java.io.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /* author:   Fotis Lazarinis (actually I translated from C to Java)
    date:     June 1997
    address:  Psilovraxou 12, Agrinio, 30100
 
    comments: Compile it, import the Porter class into you program and create an instance.
-	     Then use the stripAffixes method of this method which takes a String as 
+	     Then use the stripAffixes method of this method which takes a String as
              input and returns the stem of this String again as a String.
 
 */
 
-class NewString {
-  public String str;
-
-  NewString() {
-    str = "";
-  }
-}
-
 /**
  * The Porter stemmer for reducing words to their base stem form.
+ * <p/>
+ * Each word is stemmed in place in a char buffer kept by the thread, so that
+ * the only String made is the stem itself, and the stems of recently seen
+ * words are remembered in a cache of bounded size, since the same few
+ * thousand words make up most of any text.  When the cache is full it is
+ * emptied and refilled with the words that follow.  Safe for several
+ * threads at once.
  *
  * @author Fotis Lazarinis
  */
 
 public class Porter {
 
-  private String Clean(String str) {
-    int last = str.length();
-
-    Character ch = new Character(str.charAt(0));
-    String temp = "";
+  /**
+   * The number of stems the cache of a Porter() holds
+   */
+  public static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+  private static final String[][] STEP2_SUFFIXES = {{"ational", "ate"},
+      {"tional", "tion"},
+      {"enci", "ence"},
+      {"anci", "ance"},
+      {"izer", "ize"},
+      {"iser", "ize"},
+      {"abli", "able"},
+      {"alli", "al"},
+      {"entli", "ent"},
+      {"eli", "e"},
+      {"ousli", "ous"},
+      {"ization", "ize"},
+      {"isation", "ize"},
+      {"ation", "ate"},
+      {"ator", "ate"},
+      {"alism", "al"},
+      {"iveness", "ive"},
+      {"fulness", "ful"},
+      {"ousness", "ous"},
+      {"aliti", "al"},
+      {"iviti", "ive"},
+      {"biliti", "ble"}};
+
+  private static final String[][] STEP3_SUFFIXES = {{"icate", "ic"},
+      {"ative", ""},
+      {"alize", "al"},
+      {"alise", "al"},
+      {"iciti", "ic"},
+      {"ical", "ic"},
+      {"ful", ""},
+      {"ness", ""}};
+
+  private static final String[] STEP4_SUFFIXES = {"al", "ance", "ence", "er", "ic", "able", "ible", "ant", "ement",
+      "ment", "ent", "sion", "tion", "ou", "ism", "ate", "iti", "ous", "ive", "ize", "ise"};
+
+  private static final String[] PREFIXES = {"kilo", "micro", "milli", "intra", "ultra", "mega", "nano", "pico",
+      "pseudo"};
 
-    for (int i = 0; i < last; i++) {
-      if (ch.isLetterOrDigit(str.charAt(i)))
-        temp += str.charAt(i);
+  /**
+   * The word being stemmed by each thread
+   */
+  private static final ThreadLocal<Word> WORDS = new ThreadLocal<Word>() {
+    protected Word initialValue() {
+      return new Word();
     }
+  };
 
-    return temp;
-  } //clean
-
-  private boolean hasSuffix(String word, String suffix, NewString stem) {
-
-    String tmp = "";
-
-    if (word.length() <= suffix.length())
-      return false;
-    if (suffix.length() > 1)
-      if (word.charAt(word.length() - 2) != suffix.charAt(suffix.length() - 2))
-        return false;
+  /**
+   * The stem of each word recently stemmed, as given to stripAffixes
+   */
+  protected final ConcurrentHashMap<String, String> cache;
 
-    stem.str = "";
+  /**
+   * The most stems to hold in the cache, or 0 not to cache
+   */
+  protected final int cacheSize;
 
-    for (int i = 0; i < word.length() - suffix.length(); i++)
-      stem.str += word.charAt(i);
-    tmp = stem.str;
+  /**
+   * The number of words whose stem was and was not found in the cache
+   */
+  protected final LongAdder hits = new LongAdder();
+  protected final LongAdder misses = new LongAdder();
 
-    for (int i = 0; i < suffix.length(); i++)
-      tmp += suffix.charAt(i);
+  /**
+   * Create a stemmer with a cache of DEFAULT_CACHE_SIZE stems
+   */
+  public Porter() {
+    this(DEFAULT_CACHE_SIZE);
+  }
 
-    if (tmp.compareTo(word) == 0)
-      return true;
-    else
-      return false;
+  /**
+   * Create a stemmer with a cache of the given number of stems, or 0 not to cache
+   */
+  public Porter(int cacheSize) {
+    this.cacheSize = cacheSize;
+    cache = new ConcurrentHashMap<String, String>(Math.max(16, cacheSize / 2));
   }
 
-  private boolean vowel(char ch, char prev) {
-    switch (ch) {
-      case 'a':
-      case 'e':
-      case 'i':
-      case 'o':
-      case 'u':
-        return true;
-      case 'y': {
-
-        switch (prev) {
-          case 'a':
-          case 'e':
-          case 'i':
-          case 'o':
-          case 'u':
-            return false;
-
-          default:
-            return true;
-        }
+  /**
+   * A word as it is stemmed: its characters, the first length of buf, and
+   * where the stem ends of the suffix last found by hasSuffix
+   */
+  private static class Word {
+    char[] buf = new char[32];
+    int length;
+    int stemLength;
+
+    /**
+     * Set the word to the letters and digits of str
+     */
+    void clean(String str) {
+      int last = str.length();
+      if (buf.length < last + 1)
+        buf = new char[2 * last + 1];
+      length = 0;
+      for (int i = 0; i < last; i++) {
+        char ch = str.charAt(i);
+        if (Character.isLetterOrDigit(ch))
+          buf[length++] = ch;
       }
-
-      default:
-        return false;
     }
-  }
 
-  private int measure(String stem) {
+    void append(char ch) {
+      if (length == buf.length)
+        buf = java.util.Arrays.copyOf(buf, 2 * length);
+      buf[length++] = ch;
+    }
 
-    int i = 0, count = 0;
-    int length = stem.length();
+    void append(String str) {
+      for (int i = 0; i < str.length(); i++)
+        append(str.charAt(i));
+    }
 
-    while (i < length) {
-      for (; i < length; i++) {
-        if (i > 0) {
-          if (vowel(stem.charAt(i), stem.charAt(i - 1)))
-            break;
-        } else {
-          if (vowel(stem.charAt(i), 'a'))
-            break;
-        }
+    /**
+     * Return true if the word is longer than suffix and ends with it,
+     * leaving stemLength where it begins
+     */
+    boolean hasSuffix(String suffix) {
+      int suffixLength = suffix.length();
+      if (length <= suffixLength)
+        return false;
+      for (int i = 1; i <= suffixLength; i++) {
+        if (buf[length - i] != suffix.charAt(suffixLength - i))
+          return false;
       }
+      stemLength = length - suffixLength;
+      return true;
+    }
 
-      for (i++; i < length; i++) {
-        if (i > 0) {
-          if (!vowel(stem.charAt(i), stem.charAt(i - 1)))
-            break;
-        } else {
-          if (!vowel(stem.charAt(i), '?'))
-            break;
+    static boolean vowel(char ch, char prev) {
+      switch (ch) {
+        case 'a':
+        case 'e':
+        case 'i':
+        case 'o':
+        case 'u':
+          return true;
+        case 'y': {
+
+          switch (prev) {
+            case 'a':
+            case 'e':
+            case 'i':
+            case 'o':
+            case 'u':
+              return false;
+
+            default:
+              return true;
+          }
         }
+
+        default:
+          return false;
       }
-      if (i < length) {
-        count++;
-        i++;
-      }
-    } //while
+    }
 
-    return (count);
-  }
+    /**
+     * The measure of the first length characters of the word
+     */
+    int measure(int length) {
 
-  private boolean containsVowel(String word) {
+      int i = 0, count = 0;
 
-    for (int i = 0; i < word.length(); i++)
-      if (i > 0) {
-        if (vowel(word.charAt(i), word.charAt(i - 1)))
-          return true;
-      } else {
-        if (vowel(word.charAt(0), 'a'))
-          return true;
-      }
+      while (i < length) {
+        for (; i < length; i++) {
+          if (i > 0) {
+            if (vowel(buf[i], buf[i - 1]))
+              break;
+          } else {
+            if (vowel(buf[i], 'a'))
+              break;
+          }
+        }
 
-    return false;
-  }
+        for (i++; i < length; i++) {
+          if (i > 0) {
+            if (!vowel(buf[i], buf[i - 1]))
+              break;
+          } else {
+            if (!vowel(buf[i], '?'))
+              break;
+          }
+        }
+        if (i < length) {
+          count++;
+          i++;
+        }
+      } //while
 
-  private boolean cvc(String str) {
-    int length = str.length();
+      return (count);
+    }
 
-    if (length < 3)
-      return false;
+    /**
+     * Whether the first length characters of the word contain a vowel
+     */
+    boolean containsVowel(int length) {
 
-    if ((!vowel(str.charAt(length - 1), str.charAt(length - 2)))
-        && (str.charAt(length - 1) != 'w') && (str.charAt(length - 1) != 'x') && (str.charAt(length - 1) != 'y')
-        && (vowel(str.charAt(length - 2), str.charAt(length - 3)))) {
+      for (int i = 0; i < length; i++)
+        if (i > 0) {
+          if (vowel(buf[i], buf[i - 1]))
+            return true;
+        } else {
+          if (vowel(buf[0], 'a'))
+            return true;
+        }
 
-      if (length == 3) {
-        if (!vowel(str.charAt(0), '?'))
-          return true;
-        else
-          return false;
-      } else {
-        if (!vowel(str.charAt(length - 3), str.charAt(length - 4)))
-          return true;
-        else
-          return false;
-      }
+      return false;
     }
 
-    return false;
-  }
+    /**
+     * Whether the first length characters of the word end consonant, vowel, consonant
+     */
+    boolean cvc(int length) {
 
-  private String step1(String str) {
+      if (length < 3)
+        return false;
 
-    NewString stem = new NewString();
+      if ((!vowel(buf[length - 1], buf[length - 2]))
+          && (buf[length - 1] != 'w') && (buf[length - 1] != 'x') && (buf[length - 1] != 'y')
+          && (vowel(buf[length - 2], buf[length - 3]))) {
 
-    if (str.charAt(str.length() - 1) == 's') {
-      if ((hasSuffix(str, "sses", stem)) || (hasSuffix(str, "ies", stem))) {
-        String tmp = "";
-        for (int i = 0; i < str.length() - 2; i++)
-          tmp += str.charAt(i);
-        str = tmp;
-      } else {
-        if ((str.length() == 1) && (str.charAt(str.length() - 1) == 's')) {
-          str = "";
-          return str;
-        }
-        if (str.charAt(str.length() - 2) != 's') {
-          String tmp = "";
-          for (int i = 0; i < str.length() - 1; i++)
-            tmp += str.charAt(i);
-          str = tmp;
+        if (length == 3) {
+          return !vowel(buf[0], '?');
+        } else {
+          return !vowel(buf[length - 3], buf[length - 4]);
         }
       }
-    }
 
-    if (hasSuffix(str, "eed", stem)) {
-      if (measure(stem.str) > 0) {
-        String tmp = "";
-        for (int i = 0; i < str.length() - 1; i++)
-          tmp += str.charAt(i);
-        str = tmp;
-      }
-    } else {
-      if ((hasSuffix(str, "ed", stem)) || (hasSuffix(str, "ing", stem))) {
-        if (containsVowel(stem.str)) {
+      return false;
+    }
 
-          String tmp = "";
-          for (int i = 0; i < stem.str.length(); i++)
-            tmp += str.charAt(i);
-          str = tmp;
-          if (str.length() == 1)
-            return str;
+    void step1() {
 
-          if ((hasSuffix(str, "at", stem)) || (hasSuffix(str, "bl", stem)) || (hasSuffix(str, "iz", stem))) {
-            str += "e";
+      if (buf[length - 1] == 's') {
+        if ((hasSuffix("sses")) || (hasSuffix("ies"))) {
+          length -= 2;
+        } else {
+          if (length == 1) {
+            length = 0;
+            return;
+          }
+          if (buf[length - 2] != 's')
+            length--;
+        }
+      }
 
-          } else {
-            int length = str.length();
-            if ((str.charAt(length - 1) == str.charAt(length - 2))
-                && (str.charAt(length - 1) != 'l') && (str.charAt(length - 1) != 's') && (str.charAt(length - 1) != 'z')) {
-
-              tmp = "";
-              for (int i = 0; i < str.length() - 1; i++)
-                tmp += str.charAt(i);
-              str = tmp;
-            } else if (measure(str) == 1) {
-              if (cvc(str))
-                str += "e";
+      if (hasSuffix("eed")) {
+        if (measure(stemLength) > 0)
+          length--;
+      } else {
+        if ((hasSuffix("ed")) || (hasSuffix("ing"))) {
+          if (containsVowel(stemLength)) {
+
+            length = stemLength;
+            if (length == 1)
+              return;
+
+            if ((hasSuffix("at")) || (hasSuffix("bl")) || (hasSuffix("iz"))) {
+              append('e');
+
+            } else {
+              char last = buf[length - 1];
+              if ((last == buf[length - 2]) && (last != 'l') && (last != 's') && (last != 'z')) {
+                length--;
+              } else if (measure(length) == 1) {
+                if (cvc(length))
+                  append('e');
+              }
             }
           }
         }
       }
-    }
 
-    if (hasSuffix(str, "y", stem))
-      if (containsVowel(stem.str)) {
-        String tmp = "";
-        for (int i = 0; i < str.length() - 1; i++)
-          tmp += str.charAt(i);
-        str = tmp + "i";
-      }
-    return str;
-  }
+      if (hasSuffix("y"))
+        if (containsVowel(stemLength))
+          buf[length - 1] = 'i';
+    }
 
-  private String step2(String str) {
-
-    String[][] suffixes = {{"ational", "ate"},
-        {"tional", "tion"},
-        {"enci", "ence"},
-        {"anci", "ance"},
-        {"izer", "ize"},
-        {"iser", "ize"},
-        {"abli", "able"},
-        {"alli", "al"},
-        {"entli", "ent"},
-        {"eli", "e"},
-        {"ousli", "ous"},
-        {"ization", "ize"},
-        {"isation", "ize"},
-        {"ation", "ate"},
-        {"ator", "ate"},
-        {"alism", "al"},
-        {"iveness", "ive"},
-        {"fulness", "ful"},
-        {"ousness", "ous"},
-        {"aliti", "al"},
-        {"iviti", "ive"},
-        {"biliti", "ble"}};
-    NewString stem = new NewString();
-
-
-    for (int index = 0; index < suffixes.length; index++) {
-      if (hasSuffix(str, suffixes[index][0], stem)) {
-        if (measure(stem.str) > 0) {
-          str = stem.str + suffixes[index][1];
-          return str;
+    void step2() {
+      for (int index = 0; index < STEP2_SUFFIXES.length; index++) {
+        if (hasSuffix(STEP2_SUFFIXES[index][0])) {
+          if (measure(stemLength) > 0) {
+            length = stemLength;
+            append(STEP2_SUFFIXES[index][1]);
+            return;
+          }
         }
       }
     }
 
-    return str;
-  }
-
-  private String step3(String str) {
-
-    String[][] suffixes = {{"icate", "ic"},
-        {"ative", ""},
-        {"alize", "al"},
-        {"alise", "al"},
-        {"iciti", "ic"},
-        {"ical", "ic"},
-        {"ful", ""},
-        {"ness", ""}};
-    NewString stem = new NewString();
-
-    for (int index = 0; index < suffixes.length; index++) {
-      if (hasSuffix(str, suffixes[index][0], stem))
-        if (measure(stem.str) > 0) {
-          str = stem.str + suffixes[index][1];
-          return str;
-        }
+    void step3() {
+      for (int index = 0; index < STEP3_SUFFIXES.length; index++) {
+        if (hasSuffix(STEP3_SUFFIXES[index][0]))
+          if (measure(stemLength) > 0) {
+            length = stemLength;
+            append(STEP3_SUFFIXES[index][1]);
+            return;
+          }
+      }
     }
-    return str;
-  }
-
-  private String step4(String str) {
-
-    String[] suffixes = {"al", "ance", "ence", "er", "ic", "able", "ible", "ant", "ement", "ment", "ent", "sion", "tion",
-        "ou", "ism", "ate", "iti", "ous", "ive", "ize", "ise"};
-
-    NewString stem = new NewString();
-
-    for (int index = 0; index < suffixes.length; index++) {
-      if (hasSuffix(str, suffixes[index], stem)) {
 
-        if (measure(stem.str) > 1) {
-          str = stem.str;
-          return str;
+    void step4() {
+      for (int index = 0; index < STEP4_SUFFIXES.length; index++) {
+        if (hasSuffix(STEP4_SUFFIXES[index])) {
+          if (measure(stemLength) > 1) {
+            length = stemLength;
+            return;
+          }
         }
       }
     }
-    return str;
-  }
 
-  private String step5(String str) {
-
-    if (str.charAt(str.length() - 1) == 'e') {
-      if (measure(str) > 1) {/* measure(str)==measure(stem) if ends in vowel */
-        String tmp = "";
-        for (int i = 0; i < str.length() - 1; i++)
-          tmp += str.charAt(i);
-        str = tmp;
-      } else if (measure(str) == 1) {
-        String stem = "";
-        for (int i = 0; i < str.length() - 1; i++)
-          stem += str.charAt(i);
-
-        if (!cvc(stem))
-          str = stem;
-      }
-    }
+    void step5() {
 
-    if (str.length() == 1)
-      return str;
-    if ((str.charAt(str.length() - 1) == 'l') && (str.charAt(str.length() - 2) == 'l') && (measure(str) > 1))
-      if (measure(str) > 1) {/* measure(str)==measure(stem) if ends in vowel */
-        String tmp = "";
-        for (int i = 0; i < str.length() - 1; i++)
-          tmp += str.charAt(i);
-        str = tmp;
+      if (buf[length - 1] == 'e') {
+        int measure = measure(length);
+        if (measure > 1) {/* measure(str)==measure(stem) if ends in vowel */
+          length--;
+        } else if (measure == 1) {
+          if (!cvc(length - 1))
+            length--;
+        }
       }
-    return str;
-  }
 
-  private String stripPrefixes(String str) {
-
-    String[] prefixes = {"kilo", "micro", "milli", "intra", "ultra", "mega", "nano", "pico", "pseudo"};
+      if (length == 1)
+        return;
+      if ((buf[length - 1] == 'l') && (buf[length - 2] == 'l') && (measure(length) > 1))
+        length--;
+    }
 
-    int last = prefixes.length;
-    for (int i = 0; i < last; i++) {
-      if (str.startsWith(prefixes[i])) {
-        String temp = "";
-        for (int j = 0; j < str.length() - prefixes[i].length(); j++)
-          temp += str.charAt(j + prefixes[i].length());
-        return temp;
+    void stripPrefixes() {
+      for (int i = 0; i < PREFIXES.length; i++) {
+        String prefix = PREFIXES[i];
+        int prefixLength = prefix.length();
+        if (length < prefixLength)
+          continue;
+        int j = 0;
+        while (j < prefixLength && buf[j] == prefix.charAt(j))
+          j++;
+        if (j == prefixLength) {
+          System.arraycopy(buf, prefixLength, buf, 0, length - prefixLength);
+          length -= prefixLength;
+          return;
+        }
       }
     }
 
-    return str;
-  }
-
-
-  private String stripSuffixes(String str) {
-
-    str = step1(str);
-    if (str.length() >= 1)
-      str = step2(str);
-    if (str.length() >= 1)
-      str = step3(str);
-    if (str.length() >= 1)
-      str = step4(str);
-    if (str.length() >= 1)
-      str = step5(str);
-
-    return str;
+    void stripSuffixes() {
+      step1();
+      if (length >= 1)
+        step2();
+      if (length >= 1)
+        step3();
+      if (length >= 1)
+        step4();
+      if (length >= 1)
+        step5();
+    }
   }
 
   /**
    * Takes a String as input and returns its stem as a String.
    */
   public String stripAffixes(String str) {
+    if (cacheSize == 0)
+      return stem(str);
+    String stem = cache.get(str);
+    if (stem != null) {
+      hits.increment();
+      return stem;
+    }
+    misses.increment();
+    stem = stem(str);
+    // Start the cache over rather than let it grow past its size, so that
+    // it always holds the stems of words seen since it was last emptied
+    if (cache.size() >= cacheSize)
+      cache.clear();
+    cache.put(str, stem);
+    return stem;
+  } //stripAffixes
 
-    str = str.toLowerCase();
-    str = Clean(str);
+  /**
+   * Return the stem of a String, without the cache
+   */
+  protected String stem(String str) {
+    Word word = WORDS.get();
+    word.clean(str.toLowerCase());
 
-    if ((str != "") && (str.length() > 2)) {
-      str = stripPrefixes(str);
+    if (word.length > 2) {
+      word.stripPrefixes();
 
-      if (str != "")
-        str = stripSuffixes(str);
+      if (word.length != 0)
+        word.stripSuffixes();
 
     }
 
-    return str;
-  } //stripAffixes
+    return new String(word.buf, 0, word.length);
+  }
+
+  /**
+   * Return the number of words whose stem was found in the cache
+   */
+  public long cacheHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Return the number of words whose stem was not found in the cache
+   */
+  public long cacheMisses() {
+    return misses.sum();
+  }
 
   /**
    * For testing, print the stemmed version of a word
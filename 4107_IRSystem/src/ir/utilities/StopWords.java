@@ -0,0 +1,252 @@
+package ir.utilities;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An immutable set of stopwords stored as a trie of characters, so that a
+ * token can be checked while it is still a range of a char array, without
+ * making a String or computing a hash of it.  The trie is laid out as a
+ * double array: the child of state s along character c is state
+ * base[s] + code(c), if check of that state is s, so each character of a
+ * token costs one lookup whatever the number of stopwords.
+ * <p/>
+ * The default stopwords are read once, from stopwords.txt beside this class
+ * on the classpath, so they are found whatever the working directory.
+ */
+
+public class StopWords {
+  /**
+   * The name of the default stopword list, one per line, as a resource of
+   * this class
+   */
+  public static final String RESOURCE = "stopwords.txt";
+
+  /**
+   * The default stopwords, once loaded
+   */
+  private static volatile StopWords defaultStopWords = null;
+
+  /**
+   * The characters that occur in stopwords, in increasing order; the code
+   * of each is its position plus one, and of every other character 0
+   */
+  protected final char[] alphabet;
+
+  /**
+   * The code of each ASCII character
+   */
+  protected final int[] asciiCode = new int[128];
+
+  /**
+   * The base of each state, from which the states of its children are
+   * offset by the codes of their characters
+   */
+  protected final int[] base;
+
+  /**
+   * The parent of each state, or -1 for a position that is not a state
+   */
+  protected final int[] check;
+
+  /**
+   * Whether the path to each state spells a stopword
+   */
+  protected final boolean[] terminal;
+
+  /**
+   * The number of stopwords
+   */
+  protected final int size;
+
+  /**
+   * Create a set of the given stopwords
+   */
+  public StopWords(Collection<String> words) {
+    String[] sorted = new TreeSet<String>(words).toArray(new String[0]);
+    size = sorted.length;
+    TreeSet<Character> chars = new TreeSet<Character>();
+    for (String word : sorted) {
+      for (int i = 0; i < word.length(); i++)
+        chars.add(word.charAt(i));
+    }
+    alphabet = new char[chars.size()];
+    int numChars = 0;
+    for (char c : chars) {
+      alphabet[numChars++] = c;
+      if (c < 128)
+        asciiCode[c] = numChars;
+    }
+    int[] base = new int[64];
+    int[] check = new int[64];
+    boolean[] terminal = new boolean[64];
+    Arrays.fill(check, -1);
+    check[0] = 0; // the root
+    // Each node of the trie is the range of sorted words sharing the prefix
+    // spelled by its path; place them breadth first, giving each node's
+    // children the first positions free for their codes
+    List<int[]> nodes = new ArrayList<int[]>();
+    nodes.add(new int[] {0, sorted.length, 0, 0});
+    int firstFree = 1;
+    int numStates = 1;
+    for (int n = 0; n < nodes.size(); n++) {
+      int[] node = nodes.get(n);
+      int start = node[0];
+      int end = node[1];
+      int depth = node[2];
+      int state = node[3];
+      // Sorting puts the word ending at this node, if any, first
+      if (start < end && sorted[start].length() == depth) {
+        terminal[state] = true;
+        start++;
+      }
+      if (start == end)
+        continue; // a leaf, whose base of 0 leads to no state
+      List<int[]> children = new ArrayList<int[]>();
+      for (int i = start; i < end; ) {
+        char c = sorted[i].charAt(depth);
+        int j = i + 1;
+        while (j < end && sorted[j].charAt(depth) == c)
+          j++;
+        children.add(new int[] {i, j, depth + 1, code(c)});
+        i = j;
+      }
+      while (firstFree < check.length && check[firstFree] != -1)
+        firstFree++;
+      int b = Math.max(1, firstFree - children.get(0)[3]);
+      while (true) {
+        int last = b + children.get(children.size() - 1)[3];
+        if (last >= check.length) {
+          int oldLength = check.length;
+          int length = Math.max(2 * oldLength, last + 1);
+          base = Arrays.copyOf(base, length);
+          terminal = Arrays.copyOf(terminal, length);
+          check = Arrays.copyOf(check, length);
+          Arrays.fill(check, oldLength, length, -1);
+        }
+        boolean free = true;
+        for (int[] child : children) {
+          if (check[b + child[3]] != -1) {
+            free = false;
+            break;
+          }
+        }
+        if (free)
+          break;
+        b++;
+      }
+      base[state] = b;
+      for (int[] child : children) {
+        child[3] = b + child[3];
+        check[child[3]] = state;
+        numStates = Math.max(numStates, child[3] + 1);
+        nodes.add(child);
+      }
+    }
+    // Leave room past the last state for any code, so no lookup runs off
+    // the end of the arrays
+    int length = numStates + numChars + 1;
+    this.base = Arrays.copyOf(base, length);
+    this.terminal = Arrays.copyOf(terminal, length);
+    this.check = Arrays.copyOf(check, length);
+    Arrays.fill(this.check, Math.min(check.length, length), length, -1);
+  }
+
+  /**
+   * Read a set of stopwords, one per line, from a stream, which is closed
+   */
+  public static StopWords load(InputStream stream) throws IOException {
+    List<String> words = new ArrayList<String>();
+    BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        words.add(line);
+      }
+    }
+    finally {
+      in.close();
+    }
+    return new StopWords(words);
+  }
+
+  /**
+   * Return the default stopwords, reading them from the RESOURCE the first
+   * time.  Throws an UncheckedIOException if they cannot be read.
+   */
+  public static StopWords getDefault() {
+    StopWords stopWords = defaultStopWords;
+    if (stopWords != null)
+      return stopWords;
+    synchronized (StopWords.class) {
+      if (defaultStopWords == null) {
+        InputStream stream = StopWords.class.getResourceAsStream(RESOURCE);
+        if (stream == null)
+          throw new UncheckedIOException(new FileNotFoundException(
+              "Could not find stopwords file " + RESOURCE + " on the classpath beside " + StopWords.class.getName()));
+        try {
+          defaultStopWords = load(stream);
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException("Could not load stopwords file " + RESOURCE, e);
+        }
+      }
+      return defaultStopWords;
+    }
+  }
+
+  /**
+   * Return the code of a character
+   */
+  protected int code(char c) {
+    if (c < 128)
+      return asciiCode[c];
+    int position = Arrays.binarySearch(alphabet, c);
+    return position < 0 ? 0 : position + 1;
+  }
+
+  /**
+   * Return the child of a state along a character, or -1 if it has none
+   */
+  protected int child(int state, char c) {
+    int code = code(c);
+    if (code == 0)
+      return -1;
+    int child = base[state] + code;
+    return check[child] == state ? child : -1;
+  }
+
+  /**
+   * Return true if the characters of chars from start to end are a stopword
+   */
+  public boolean contains(char[] chars, int start, int end) {
+    int state = 0;
+    for (int i = start; i < end; i++) {
+      state = child(state, chars[i]);
+      if (state < 0)
+        return false;
+    }
+    return terminal[state];
+  }
+
+  /**
+   * Return true if a word is a stopword
+   */
+  public boolean contains(String word) {
+    int state = 0;
+    for (int i = 0; i < word.length(); i++) {
+      state = child(state, word.charAt(i));
+      if (state < 0)
+        return false;
+    }
+    return terminal[state];
+  }
+
+  /**
+   * Return the number of stopwords
+   */
+  public int size() {
+    return size;
+  }
+}
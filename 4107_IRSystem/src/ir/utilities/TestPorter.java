@@ -0,0 +1,55 @@
+package ir.utilities;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Checks the Porter stemmer against the stems of the stemmer it replaced,
+ * with and without its cache of stems.  The stems are read from a file of
+ * lines of a word, a tab and its stem, made with the old stemmer from the
+ * tokens of the tweets, the queries and the stopwords, the examples of
+ * Porter's paper, and combinations of the prefixes and suffixes it strips.
+ */
+
+public class TestPorter {
+  /**
+   * A driver method for checking the stemmer against the old stems.
+   *
+   * @param args a list of command-line arguments.  The first, if given, is
+   *             the file of stems, by default files/stems.txt
+   */
+  public static void main(String args[]) throws IOException {
+    String stemsName = args.length > 0 ? args[0] : System.getProperty("user.dir") + "/files/stems.txt";
+    System.out.println("Checking stems from " + stemsName + "...");
+    Porter cached = new Porter();
+    Porter uncached = new Porter(0);
+    int numWords = 0;
+    int mismatches = 0;
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(stemsName),
+        StandardCharsets.UTF_8));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        int tab = line.indexOf('\t');
+        String word = line.substring(0, tab);
+        String stem = line.substring(tab + 1);
+        numWords++;
+        // Stem twice with the cache, so that the second comes from it
+        for (String result : new String[]{uncached.stripAffixes(word), cached.stripAffixes(word),
+            cached.stripAffixes(word)}) {
+          if (!result.equals(stem)) {
+            System.out.println(word + ": expected " + stem + ", got " + result);
+            mismatches++;
+            break;
+          }
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+    System.out.println("Words whose stem differs from the old stemmer's: " + mismatches + " of " + numWords);
+    if (mismatches > 0)
+      System.exit(1);
+  }
+}
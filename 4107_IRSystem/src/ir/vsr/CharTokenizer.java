@@ -0,0 +1,161 @@
+package ir.vsr;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Splits text into candidate tokens, the maximal runs of characters that are
+ * not delimiters, exactly as a StringTokenizer with DELIMITERS would, but
+ * without creating a String for each.  The current token is left as a range
+ * of a char buffer, to be examined in place and turned into a String only
+ * if it is kept.  Delimiters are all ASCII and found with a lookup table.
+ * <p/>
+ * Reads either a fixed String or a Reader, which is read a buffer at a time
+ * and closed once it is exhausted.
+ */
+
+public class CharTokenizer {
+  /**
+   * The characters that separate tokens, tokenizing only alphabetic strings
+   */
+  public static final String DELIMITERS = " \t\n\r\f\'\"\\1234567890!@#$%^&*()_+-={}|[]:;<,>.?/`~";
+
+  /**
+   * Whether each ASCII character is in DELIMITERS
+   */
+  protected static final boolean[] IS_DELIMITER = new boolean[128];
+
+  static {
+    for (int i = 0; i < DELIMITERS.length(); i++) {
+      IS_DELIMITER[DELIMITERS.charAt(i)] = true;
+    }
+  }
+
+  /**
+   * The number of characters read from a Reader at a time
+   */
+  protected static final int BUFFER_SIZE = 8192;
+
+  /**
+   * The text, of which only the characters before limit are valid
+   */
+  protected char[] chars;
+  protected int limit;
+
+  /**
+   * The position of the next character to examine
+   */
+  protected int position = 0;
+
+  /**
+   * The range of the current token in chars
+   */
+  protected int start = 0;
+  protected int end = 0;
+
+  /**
+   * The source of more text, or null if there is none
+   */
+  protected Reader reader = null;
+
+  /**
+   * Create a tokenizer for a String
+   */
+  public CharTokenizer(String text) {
+    chars = text.toCharArray();
+    limit = chars.length;
+  }
+
+  /**
+   * Create a tokenizer for the text of a Reader
+   */
+  public CharTokenizer(Reader reader) {
+    this.reader = reader;
+    chars = new char[BUFFER_SIZE];
+    limit = 0;
+  }
+
+  /**
+   * Return true if a character separates tokens
+   */
+  public static boolean isDelimiter(char c) {
+    return c < 128 && IS_DELIMITER[c];
+  }
+
+  /**
+   * Move to the next token, returning false if there are none left
+   */
+  public boolean next() throws IOException {
+    // Skip delimiters, reading more text whenever the buffer is used up
+    do {
+      while (position < limit && isDelimiter(chars[position]))
+        position++;
+    }
+    while (position == limit && fill(position));
+    if (position == limit)
+      return false;
+    // Take characters up to the next delimiter, keeping the token in the
+    // buffer while more text is read
+    start = position;
+    do {
+      while (position < limit && !isDelimiter(chars[position]))
+        position++;
+    }
+    while (position == limit && fill(start));
+    end = position;
+    return true;
+  }
+
+  /**
+   * Read more text into the buffer, first moving the characters from keep
+   * on to its front.  Returns false if there is no more text.
+   */
+  protected boolean fill(int keep) throws IOException {
+    if (reader == null)
+      return false;
+    int kept = limit - keep;
+    // A token as long as the whole buffer needs a larger one
+    if (kept == chars.length)
+      chars = Arrays.copyOf(chars, 2 * chars.length);
+    System.arraycopy(chars, keep, chars, 0, kept);
+    start = start - keep;
+    position = position - keep;
+    limit = kept;
+    int count = reader.read(chars, limit, chars.length - limit);
+    if (count < 0) {
+      reader.close();
+      reader = null;
+      return false;
+    }
+    limit = limit + count;
+    return true;
+  }
+
+  /**
+   * Return the buffer holding the current token
+   */
+  public char[] chars() {
+    return chars;
+  }
+
+  /**
+   * Return the position of the first character of the current token in chars()
+   */
+  public int start() {
+    return start;
+  }
+
+  /**
+   * Return the position just past the current token in chars()
+   */
+  public int end() {
+    return end;
+  }
+
+  /**
+   * Return the current token as a String
+   */
+  public String token() {
+    return new String(chars, start, end - start);
+  }
+}
@@ -0,0 +1,82 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * The IDF of every token of an index as it was when last computed across
+ * the whole corpus, with the number of documents then and the number
+ * appended or deleted since.  An index with lazy statistics scores queries
+ * and computes the lengths of appended documents with these, rather than
+ * with the IDF the tokens have now, and only computes them afresh once
+ * enough documents have changed, so that the lengths of the documents
+ * already indexed stay right for them in the meantime.
+ */
+
+public class CorpusStatistics {
+  /**
+   * The number of documents, deleted or not, when the IDFs were computed
+   */
+  public final int numDocs;
+
+  /**
+   * The number of documents appended or deleted since
+   */
+  protected int numChanged = 0;
+
+  /**
+   * The IDF of each token, indexed by the token's id in TermDictionary.GLOBAL,
+   * and NaN for ids of tokens not indexed when they were computed
+   */
+  protected double[] idfs;
+
+  /**
+   * Create statistics for a corpus of the given number of documents, with
+   * no IDFs yet
+   */
+  public CorpusStatistics(int numDocs) {
+    this.numDocs = numDocs;
+    idfs = new double[TermDictionary.GLOBAL.size()];
+    Arrays.fill(idfs, Double.NaN);
+  }
+
+  /**
+   * Return the IDF of the token with the given id, or NaN if it has none
+   */
+  public double idf(int termId) {
+    return termId < idfs.length ? idfs[termId] : Double.NaN;
+  }
+
+  /**
+   * Set the IDF of the token with the given id
+   */
+  public void setIdf(int termId, double idf) {
+    if (termId >= idfs.length) {
+      int length = idfs.length;
+      idfs = Arrays.copyOf(idfs, Math.max(termId + 1, Math.max(2 * length, TermDictionary.GLOBAL.size())));
+      Arrays.fill(idfs, length, idfs.length, Double.NaN);
+    }
+    idfs[termId] = idf;
+  }
+
+  /**
+   * Return a copy of the IDF of every token, indexed by token id
+   */
+  public double[] idfs() {
+    return idfs.clone();
+  }
+
+  /**
+   * Count documents appended or deleted
+   */
+  public void changed(int numDocs) {
+    numChanged = numChanged + numDocs;
+  }
+
+  /**
+   * Return true once more than the given share of the documents counted
+   * when the IDFs were computed have been appended or deleted since
+   */
+  public boolean isStale(double threshold) {
+    return numChanged > threshold * numDocs;
+  }
+}
@@ -18,21 +18,34 @@ import ir.utilities.*;
 
 public abstract class Document {
   /**
-   * The file where a list of stopwords, 1 per line, are stored
+   * The stopwords, loaded from the classpath by the first document created
    */
-  protected static final String stopWordsFile = "src/ir/utilities/stopwords.txt";
+  protected static volatile StopWords stopWords = null;
   /**
-   * The number of stopwords in this file
+   * The Porter stemmer
    */
-  protected static final int numStopWords = 514;
+  protected static Porter stemmer = new Porter();
+
   /**
-   * The hashtable where stopwords are indexed
+   * The lower case of each ASCII letter, indexed by the letter, and 0 for
+   * every other ASCII character
    */
-  protected static HashSet<String> stopWords = null;
+  protected static final char[] ASCII_LOWER_CASE = new char[128];
+
+  static {
+    for (char c = 'a'; c <= 'z'; c++) {
+      ASCII_LOWER_CASE[c] = c;
+      ASCII_LOWER_CASE[Character.toUpperCase(c)] = c;
+    }
+  }
+
   /**
-   * The Porter stemmer
+   * Whether ASCII letters can be lower cased through ASCII_LOWER_CASE, as
+   * they can be in every default locale but Turkish and Azerbaijani, where
+   * toLowerCase turns I into a dotless i
    */
-  protected static Porter stemmer = new Porter();
+  protected static final boolean ASCII_CASE_RULES =
+      !Locale.getDefault().getLanguage().equals("tr") && !Locale.getDefault().getLanguage().equals("az");
 
   /**
    * The next token in the document
@@ -46,6 +59,16 @@ public abstract class Document {
    * Whether to stem tokens with the Porter stemmer
    */
   protected boolean stem = false;
+  /**
+   * The tokenizer for the text of the document, for subclasses that read
+   * their text through one; others return candidate tokens from
+   * getNextCandidateToken
+   */
+  protected CharTokenizer tokenizer = null;
+  /**
+   * The current candidate token, lower cased, while it is being checked
+   */
+  protected char[] candidate = new char[32];
 
   /**
    * Creates a new Document making sure that the stopwords
@@ -86,26 +109,92 @@ public abstract class Document {
    * Performs stop-word removal of candidate tokens.
    */
   protected void prepareNextToken() {
-    // Loop until a non-stopword token is found
+    if (tokenizer == null) {
+      // Loop until a non-stopword token is found
+      do {
+        nextToken = getNextCandidateToken();
+        if (nextToken == null) return; // reached end of document
+        nextToken = filterToken(nextToken);
+      }
+      while (nextToken == null);
+      return;
+    }
+    // Check each candidate token in the tokenizer's buffer, so that a String
+    // is only made for candidates that are all letters
     do {
-      nextToken = getNextCandidateToken();
-      if (nextToken == null) return; // reached end of document
-      // Normalize token string case to lower case.
-      nextToken = nextToken.toLowerCase();
-      // Do not include a token found in the stopword list as
-      // indexed in the stopwords hashtable.
-      // Also do not include tokens that are not all Unicode letters
-      if (stopWords.contains(nextToken) || !allLetters(nextToken))
+      if (!nextCandidate()) {
         nextToken = null;
-      else if (stem) {
-        nextToken = stemmer.stripAffixes(nextToken);
-        if (stopWords.contains(nextToken))
-          nextToken = null;
+        return; // reached end of document
       }
+      nextToken = filterToken(tokenizer.chars(), tokenizer.start(), tokenizer.end());
     }
     while (nextToken == null);
   }
 
+  /**
+   * Return a candidate token lower cased, and stemmed if stem is set, or
+   * null if it is a stopword or not all letters.
+   */
+  protected String filterToken(String token) {
+    // Normalize token string case to lower case.
+    token = token.toLowerCase();
+    // Do not include a token found in the stopword list.
+    // Also do not include tokens that are not all Unicode letters
+    if (stopWords.contains(token) || !allLetters(token))
+      return null;
+    return filterLetters(token);
+  }
+
+  /**
+   * Return the candidate token in chars from start to end, filtered as by
+   * filterToken(String).  ASCII tokens are lower cased and checked for
+   * letters in place; any other token is handed to filterToken(String), as
+   * lower casing it may change its length.
+   */
+  protected String filterToken(char[] chars, int start, int end) {
+    int length = end - start;
+    if (length > candidate.length)
+      candidate = new char[Math.max(length, 2 * candidate.length)];
+    for (int i = 0; i < length; i++) {
+      char c = chars[start + i];
+      if (c >= 128 || !ASCII_CASE_RULES)
+        return filterToken(new String(chars, start, length));
+      char lowerCase = ASCII_LOWER_CASE[c];
+      if (lowerCase == 0)
+        return null; // not all letters
+      candidate[i] = lowerCase;
+    }
+    if (stopWords.contains(candidate, 0, length))
+      return null;
+    return filterLetters(new String(candidate, 0, length));
+  }
+
+  /**
+   * Return a lower case token of letters that is not a stopword, stemmed if
+   * stem is set, or null if it stems to a stopword
+   */
+  protected String filterLetters(String token) {
+    if (stem) {
+      token = stemmer.stripAffixes(token);
+      if (stopWords.contains(token))
+        return null;
+    }
+    return token;
+  }
+
+  /**
+   * Move the tokenizer to the next candidate token, returning false if
+   * there are none left.
+   */
+  protected boolean nextCandidate() {
+    try {
+      return tokenizer.next();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
   /**
    * Check if this token consists of all Unicode letters to eliminate
    * other bizarre tokens
@@ -119,10 +208,15 @@ public abstract class Document {
   }
 
   /**
-   * Return the next possible token in the document. Each subclass must implement
-   * this method to produce candidate tokens for subsequent stop-word filtering.
+   * Return the next possible token in the document, for subsequent stop-word
+   * filtering.  Subclasses that do not read their text through a tokenizer
+   * must override this method to produce candidate tokens.
    */
-  protected abstract String getNextCandidateToken();
+  protected String getNextCandidateToken() {
+    if (tokenizer == null || !nextCandidate())
+      return null;
+    return tokenizer.token();
+  }
 
   /**
    * Returns the total number of tokens in the document or -1 if
@@ -136,38 +230,18 @@ public abstract class Document {
   }
 
   /**
-   * Load the stopwords from file to the hashtable where they are indexed.
+   * Load the stopwords, which are read from the classpath only once however
+   * many threads create the first documents at the same time.  Throws an
+   * UncheckedIOException if they cannot be read.
    */
   protected static void loadStopWords() {
-    // Initialize hashtable to proper size given known number of
-    // stopwords in the file and a default 75% load factor with
-    // 10 extra slots for spare room.
-    int HashMapSize = (int) (numStopWords / 0.75 + 10);
-    stopWords = new HashSet<String>(HashMapSize);
-    String line;
-    try {
-      // Open stopword file for reading
-      BufferedReader in = new BufferedReader(new FileReader(stopWordsFile));
-      // Read in stopwords, one per line, until file is empty
-      while ((line = in.readLine()) != null) {
-        // Index word into the hashtable with
-        // the default empty string as a "dummy" value.
-        stopWords.add(line);
-      }
-      in.close();
-    }
-    catch (IOException e) {
-      System.out.println("\nCould not load stopwords file: " + stopWordsFile);
-      System.exit(1);
-    }
+    stopWords = StopWords.getDefault();
   }
 
   /**
    * Returns a hashmap version of the term-vector (bag of words) for this
    * document, where each token is a key whose value is the number of times
-   * it occurs in the document as stored in a Weight.
-   *
-   * @see Weight
+   * it occurs in the document.
    */
   public HashMapVector hashMapVector() {
     if (numTokens != 0)
@@ -181,6 +255,25 @@ public abstract class Document {
     return vector;
   }
 
+  /**
+   * Returns the term-vector of this document as a query.  Like
+   * hashMapVector, except that tokens no document has been indexed under
+   * are left out rather than given ids, since they match nothing and add
+   * nothing to the length of the query, so that queries do not grow the
+   * term dictionary.  Make it after indexing the documents it is to match.
+   */
+  public HashMapVector queryVector() {
+    if (numTokens != 0)
+      return null;
+    HashMapVector vector = new HashMapVector();
+    while (hasMoreTokens()) {
+      int termId = TermDictionary.GLOBAL.lookup(nextToken());
+      if (termId >= 0)
+        vector.increment(termId, 1.0);
+    }
+    return vector;
+  }
+
   /**
    * Compute and print out (one line per term) the term-vector (bag of words)
    * for this document
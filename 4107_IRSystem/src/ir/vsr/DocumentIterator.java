@@ -32,6 +32,10 @@ public class DocumentIterator {
    * The current position of the iterator in this array
    */
   protected int position = 0;
+  /**
+   * The position just past the last file to iterate over
+   */
+  protected int end = 0;
   /**
    * The type of documents to be created
    */
@@ -57,6 +61,7 @@ public class DocumentIterator {
       files = dirFile.listFiles();
     // Initialize the position and docType
     position = 0;
+    end = files == null ? 0 : files.length;
     this.docType = docType;
     this.stem = stem;
   }
@@ -81,11 +86,45 @@ public class DocumentIterator {
     this(dirFile, TYPE_TEXT, false);
   }
 
+  /**
+   * Create an iterator over the files from start up to but not including end
+   * of those of another iterator
+   */
+  protected DocumentIterator(DocumentIterator docIter, int start, int end) {
+    files = docIter.files;
+    position = start;
+    this.end = end;
+    docType = docIter.docType;
+    stem = docIter.stem;
+  }
+
+  /**
+   * Return the number of documents not yet visited
+   */
+  public int numRemaining() {
+    return end - position;
+  }
+
+  /**
+   * Split the documents into the given number of contiguous ranges of
+   * nearly equal size, returning an iterator for each range in order.
+   */
+  public List<DocumentIterator> split(int parts) {
+    List<DocumentIterator> ranges = new ArrayList<DocumentIterator>(parts);
+    int start = position;
+    for (int part = 0; part < parts; part++) {
+      int rangeEnd = position + (int) ((long) (end - position) * (part + 1) / parts);
+      ranges.add(new DocumentIterator(this, start, rangeEnd));
+      start = rangeEnd;
+    }
+    return ranges;
+  }
+
   /**
    * Get the next document
    */
   public FileDocument nextDocument() {
-    if (position >= files.length)
+    if (position >= end)
       return null;
     FileDocument doc = null;
     // Create the correct type of FileDocument based on docType
@@ -106,7 +145,7 @@ public class DocumentIterator {
    * Returns true iff there are more documents in this directory
    */
   public boolean hasMoreDocuments() {
-    if (files != null && position < files.length)
+    if (position < end)
       return true;
     else
       return false;
@@ -16,6 +16,11 @@ public class DocumentReference {
    * The file where the referenced document is stored.
    */
   public File file = null;
+  /**
+   * The name of the referenced document: the name of its file, or the name
+   * given to a document indexed from a string, which has no file.
+   */
+  public String name = null;
   /**
    * The length of the corresponding Document vector.
    */
@@ -23,6 +28,15 @@ public class DocumentReference {
 
   public DocumentReference(File file, double length) {
     this.file = file;
+    this.name = file.getName();
+    this.length = length;
+  }
+
+  /**
+   * Create a reference to a document with no file, such as one indexed from a string
+   */
+  public DocumentReference(String name, double length) {
+    this.name = name;
     this.length = length;
   }
 
@@ -34,7 +48,7 @@ public class DocumentReference {
   }
 
   public String toString() {
-    return file.getName();
+    return name;
   }
 
   /**
@@ -42,6 +56,8 @@ public class DocumentReference {
    * with the given docType and stemming
    */
   public Document getDocument(short docType, boolean stem) {
+    if (file == null)
+      throw new IllegalStateException("Document " + name + " was not indexed from a file");
     Document doc = null;
     switch (docType) {
       case DocumentIterator.TYPE_TEXT:
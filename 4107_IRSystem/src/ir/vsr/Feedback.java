@@ -49,6 +49,10 @@ public class Feedback {
    * The list of DocumentReference's that were rated irrelevant
    */
   public ArrayList<DocumentReference> badDocRefs = new ArrayList<DocumentReference>();
+  /**
+   * The vectors of the rated documents, read once and kept for each revised query
+   */
+  protected Map<DocumentReference, SparseVector> docVectors = new HashMap<DocumentReference, SparseVector>();
 
   /**
    * Create a feedback object for this query with initial retrievals to be rated
@@ -89,7 +93,7 @@ public class Feedback {
   public void getFeedback(int showNumber) {
     // Get the docRef for this document (remember showNumber starts at 1 and is 1 greater than array index)
     DocumentReference docRef = retrievals[showNumber - 1].docRef;
-    String response = UserInput.prompt("Is document #" + showNumber + ":" + docRef.file.getName() +
+    String response = UserInput.prompt("Is document #" + showNumber + ":" + docRef.name +
         " relevant (y:Yes, n:No, u:Unsure)?: ");
     if (response.equals("y"))
       goodDocRefs.add(docRef);
@@ -124,25 +128,35 @@ public class Feedback {
     // Add in the vector for each of the positively rated documents
     for (DocumentReference docRef : goodDocRefs) {
       // Get the document vector for this positive document
-      Document doc = docRef.getDocument(invertedIndex.docType, invertedIndex.stem);
-      HashMapVector vector = doc.hashMapVector();
-      // Multiply positive docs by beta and normalize by max token frequency
-      vector.multiply(BETA / vector.maxWeight());
-      // Add it to the new query vector
-      newQuery.add(vector);
+      SparseVector vector = docVector(docRef);
+      // Multiply positive docs by beta, normalize by max token frequency,
+      // and add to the new query vector
+      newQuery.addScaled(vector, BETA / vector.maxWeight());
     }
     // Subtract the vector for each of the negatively rated documents
     for (DocumentReference docRef : badDocRefs) {
       // Get the document vector for this negative document
-      Document doc = docRef.getDocument(invertedIndex.docType, invertedIndex.stem);
-      HashMapVector vector = doc.hashMapVector();
-      // Multiply negative docs by beta and normalize by max token frequency
-      vector.multiply(GAMMA / vector.maxWeight());
-      // Subtract it from the new query vector
-      newQuery.subtract(vector);
+      SparseVector vector = docVector(docRef);
+      // Multiply negative docs by gamma, normalize by max token frequency,
+      // and subtract from the new query vector
+      newQuery.addScaled(vector, -GAMMA / vector.maxWeight());
     }
     return newQuery;
   }
 
+  /**
+   * Return the vector of a rated document, reading the document only the
+   * first time its vector is needed
+   */
+  protected SparseVector docVector(DocumentReference docRef) {
+    SparseVector vector = docVectors.get(docRef);
+    if (vector == null) {
+      Document doc = docRef.getDocument(invertedIndex.docType, invertedIndex.stem);
+      vector = new SparseVector(doc.hashMapVector());
+      docVectors.put(docRef, vector);
+    }
+    return vector;
+  }
+
 
 }
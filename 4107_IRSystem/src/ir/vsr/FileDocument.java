@@ -33,5 +33,20 @@ public abstract class FileDocument extends Document {
     }
   }
 
+  /**
+   * Move the tokenizer to the next candidate token, returning false if
+   * there are none left.
+   */
+  protected boolean nextCandidate() {
+    try {
+      return tokenizer.next();
+    }
+    catch (IOException e) {
+      System.out.println("\nCould not read from " + getClass().getSimpleName() + ": " + file);
+      System.exit(1);
+      return false;
+    }
+  }
+
 }
 
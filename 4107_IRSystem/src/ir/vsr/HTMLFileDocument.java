@@ -77,14 +77,9 @@ class HTMLFileParserThread extends Thread {
 public class HTMLFileDocument extends FileDocument {
 
   /**
-   * StringTokenizer delim for tokenizing only alphabetic strings.
+   * Delimiters for tokenizing only alphabetic strings.
    */
-  public static final String tokenizerDelim = " \t\n\r\f\'\"\\1234567890!@#$%^&*()_+-={}|[]:;<,>.?/`~";
-
-  /**
-   * The tokenizer for lines read from this document.
-   */
-  protected StringTokenizer tokenizer = null;
+  public static final String tokenizerDelim = CharTokenizer.DELIMITERS;
 
   /**
    * The I/O reader for accessing the output of the HTML parser.
@@ -106,12 +101,8 @@ public class HTMLFileDocument extends FileDocument {
       // its plain text output is read
       thread.start();
 
-      // create a StringTokenizer for the first line of the
-      // plain text
-      String line = textReader.readLine();
-      if (line != null) {
-        this.tokenizer = new StringTokenizer(line, tokenizerDelim);
-      }
+      // Tokenize the plain text as it is read, closing it at the end
+      this.tokenizer = new CharTokenizer(textReader);
       prepareNextToken();  // Prepare the first token
     }
     catch (IOException e) {
@@ -127,36 +118,6 @@ public class HTMLFileDocument extends FileDocument {
     this(new File(fileName), stem);
   }
 
-  /**
-   * Return the next purely alpha-character token in the document, or null if none left.
-   */
-  protected String getNextCandidateToken() {
-    if (tokenizer == null)
-      return null;
-    String candidateToken = null;
-    try {
-      // Loop until you find a line in the file with a token
-      while (!tokenizer.hasMoreTokens()) {
-        // Read another line of plain text
-        String line = textReader.readLine();
-        if (line == null) {
-          // End of file, no more tokens, return null
-          textReader.close();
-          return null;
-        } else
-          // Create a tokenizer for this file line
-          tokenizer = new StringTokenizer(line, tokenizerDelim);
-      }
-      // Get the next token in the current line
-      candidateToken = tokenizer.nextToken();
-    }
-    catch (IOException e) {
-      System.out.println("\nCould not read from HTMLFileDocument: " + file);
-      System.exit(1);
-    }
-    return candidateToken;
-  }
-
   /**
    * For testing, print the bag-of-words vector for a given HTML file
    */
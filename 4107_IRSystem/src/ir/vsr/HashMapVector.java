@@ -2,70 +2,193 @@ package ir.vsr;
 
 import java.util.*;
 
-import ir.utilities.*;
-
 /**
- * A data structure for a term vector for a document stored
- * as a HashMap that maps tokens to Weight's that store the
- * weight of that token in the document.
+ * A data structure for a term vector for a document, mapping tokens to
+ * their weights in the document.
  * <p/>
  * Needed as an efficient, indexed representation of sparse
- * document vectors.
+ * document vectors.  Tokens are held as their ids in TermDictionary.GLOBAL.
+ * The ids and their weights are kept in two parallel arrays, in the order
+ * the tokens were first added, and found through an open-addressing hash
+ * table of positions in those arrays, so that a vector costs no objects per
+ * token and combining vectors never touches a String.  The tokens and
+ * weights are visited by position: from 0 up to size(), termIdAt (or
+ * tokenAt, for display) and weightAt.
  *
  * @author Ray Mooney
  */
 
 public class HashMapVector {
   /**
-   * The HashMap that stores the mapping of tokens to Weights
+   * The ids of the tokens in the vector, in the order they were added
+   */
+  protected int[] termIds;
+
+  /**
+   * The weight of each token in termIds
+   */
+  protected double[] weights;
+
+  /**
+   * The number of tokens in the vector
+   */
+  protected int size = 0;
+
+  /**
+   * The hash table, with linear probing: each slot holds one more than the
+   * position of a token in termIds, or 0 if empty.  Its length is a power
+   * of two, at least twice the number of tokens.
    */
-  public Map<String, Weight> hashMap = new HashMap<String, Weight>();
+  protected int[] slots;
+
+  /**
+   * Create an empty vector
+   */
+  public HashMapVector() {
+    this(8);
+  }
+
+  /**
+   * Create an empty vector with room for the given number of tokens
+   */
+  public HashMapVector(int capacity) {
+    capacity = Math.max(capacity, 2);
+    termIds = new int[capacity];
+    weights = new double[capacity];
+    slots = new int[Integer.highestOneBit(capacity - 1) << 2];
+  }
 
   /**
    * Returns the number of tokens in the vector.
    */
   public int size() {
-    return hashMap.size();
+    return size;
   }
 
   /**
    * Clears the vector back to all zeros
    */
   public void clear() {
-    hashMap.clear();
+    Arrays.fill(slots, 0);
+    size = 0;
+  }
+
+  /**
+   * Return the id of the token at the given position, from 0 up to size()
+   */
+  public int termIdAt(int position) {
+    return termIds[position];
+  }
+
+  /**
+   * Return the token at the given position, from 0 up to size()
+   */
+  public String tokenAt(int position) {
+    return TermDictionary.GLOBAL.term(termIds[position]);
+  }
+
+  /**
+   * Return the weight of the token at the given position, from 0 up to size()
+   */
+  public double weightAt(int position) {
+    return weights[position];
+  }
+
+  /**
+   * Return the position of a token id, or -1 if it is not in the vector
+   */
+  protected int find(int termId) {
+    int mask = slots.length - 1;
+    for (int slot = hash(termId) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+      if (termIds[slots[slot] - 1] == termId)
+        return slots[slot] - 1;
+    }
+    return -1;
   }
 
   /**
-   * Returns the Set of MapEntries in the hashMap
+   * Spread the bits of a token id over the low bits used by the table
    */
-  public Set<Map.Entry<String, Weight>> entrySet() {
-    return hashMap.entrySet();
+  protected static int hash(int termId) {
+    int h = termId * 0x9E3779B9;
+    return h ^ (h >>> 16);
   }
 
   /**
    * Increment the weight for the given token in the vector by the given amount.
    */
   public double increment(String token, double amount) {
-    Weight weight = hashMap.get(token);
-    if (weight == null) {
-      // If there is no current Weight for this token, create one
-      weight = new Weight();
-      hashMap.put(token, weight);
+    return increment(TermDictionary.GLOBAL.id(token), amount);
+  }
+
+  /**
+   * Increment the weight for the token with the given id in the vector by the given amount.
+   */
+  public double increment(int termId, double amount) {
+    int position = find(termId);
+    if (position < 0) {
+      // If the token is not in the vector yet, add it with weight 0
+      position = addToken(termId);
     }
     // Increment the weight of this token in the bag.
-    weight.increment(amount);
-    return weight.getValue();
+    weights[position] += amount;
+    return weights[position];
+  }
+
+  /**
+   * Add a token not already in the vector with weight 0, returning its position
+   */
+  protected int addToken(int termId) {
+    if (size == termIds.length) {
+      termIds = Arrays.copyOf(termIds, size * 2);
+      weights = Arrays.copyOf(weights, size * 2);
+    }
+    if (2 * (size + 1) > slots.length)
+      rehash(slots.length * 2);
+    termIds[size] = termId;
+    weights[size] = 0.0;
+    insert(size);
+    return size++;
+  }
+
+  /**
+   * Put the token at the given position into the first free slot for it
+   */
+  protected void insert(int position) {
+    int mask = slots.length - 1;
+    int slot = hash(termIds[position]) & mask;
+    while (slots[slot] != 0)
+      slot = (slot + 1) & mask;
+    slots[slot] = position + 1;
+  }
+
+  /**
+   * Rebuild the hash table with the given number of slots
+   */
+  protected void rehash(int numSlots) {
+    slots = new int[numSlots];
+    for (int position = 0; position < size; position++) {
+      insert(position);
+    }
   }
 
   /**
    * Return the weight of the given token in the vector
    */
   public double getWeight(String token) {
-    Weight weight = hashMap.get(token);
-    if (weight == null)
+    int termId = TermDictionary.GLOBAL.lookup(token);
+    return termId < 0 ? 0.0 : getWeight(termId);
+  }
+
+  /**
+   * Return the weight of the token with the given id in the vector
+   */
+  public double getWeight(int termId) {
+    int position = find(termId);
+    if (position < 0)
       return 0.0;
     else
-      return weight.getValue();
+      return weights[position];
   }
 
   /**
@@ -86,12 +209,8 @@ public class HashMapVector {
    * Destructively add the given vector to the current vector
    */
   public void add(HashMapVector vector) {
-    for (Map.Entry<String, Weight> entry : vector.entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The weight for the token is in the value of the Weight
-      double weight = entry.getValue().getValue();
-      increment(token, weight);
+    for (int i = 0; i < vector.size; i++) {
+      increment(vector.termIds[i], vector.weights[i]);
     }
   }
 
@@ -99,12 +218,17 @@ public class HashMapVector {
    * Destructively add a scaled version of the given vector to the current vector
    */
   public void addScaled(HashMapVector vector, double scalingFactor) {
-    for (Map.Entry<String, Weight> entry : vector.entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The weight for the token is in the value of the Weight
-      double weight = entry.getValue().getValue();
-      increment(token, scalingFactor * weight);
+    for (int i = 0; i < vector.size; i++) {
+      increment(vector.termIds[i], scalingFactor * vector.weights[i]);
+    }
+  }
+
+  /**
+   * Destructively add a scaled version of the given sorted vector to the current vector
+   */
+  public void addScaled(SparseVector vector, double scalingFactor) {
+    for (int i = 0; i < vector.size(); i++) {
+      increment(vector.termIdAt(i), scalingFactor * vector.weightAt(i));
     }
   }
 
@@ -112,12 +236,8 @@ public class HashMapVector {
    * Destructively subtract the given vector from the current vector
    */
   public void subtract(HashMapVector vector) {
-    for (Map.Entry<String, Weight> entry : vector.entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The weight for the token is in the value of the Weight
-      double weight = entry.getValue().getValue();
-      increment(token, -weight);
+    for (int i = 0; i < vector.size; i++) {
+      increment(vector.termIds[i], -vector.weights[i]);
     }
   }
 
@@ -126,27 +246,21 @@ public class HashMapVector {
    * Destructively multiply the vector by a constant
    */
   public void multiply(double factor) {
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      Weight weight = entry.getValue();
-      weight.setValue(factor * weight.getValue());
+    for (int i = 0; i < size; i++) {
+      weights[i] = factor * weights[i];
     }
   }
 
 
   /**
-   * Produce a copy of this HashMapVector with a new HashMap and new
-   * Weight's
+   * Produce a copy of this HashMapVector
    */
   public HashMapVector copy() {
-    HashMapVector result = new HashMapVector();
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The weight for the token is in the value of the Weight
-      double weight = entry.getValue().getValue();
-      result.increment(token, weight);
-    }
+    HashMapVector result = new HashMapVector(0);
+    result.termIds = termIds.clone();
+    result.weights = weights.clone();
+    result.slots = slots.clone();
+    result.size = size;
     return result;
   }
 
@@ -155,11 +269,9 @@ public class HashMapVector {
    */
   public double maxWeight() {
     double maxWeight = Double.NEGATIVE_INFINITY;
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // The weight for the token is in the value of the Weight
-      double weight = entry.getValue().getValue();
-      if (weight > maxWeight)
-        maxWeight = weight;
+    for (int i = 0; i < size; i++) {
+      if (weights[i] > maxWeight)
+        maxWeight = weights[i];
     }
     return maxWeight;
   }
@@ -169,10 +281,8 @@ public class HashMapVector {
    * Print out the vector showing the tokens and their weights
    */
   public void print() {
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // Print the term and its weight, where the value of the map entry is a Weight
-      // and then you need to get the value of the Weight as the weight.
-      System.out.println(entry.getKey() + ":" + entry.getValue().getValue());
+    for (int i = 0; i < size; i++) {
+      System.out.println(tokenAt(i) + ":" + weights[i]);
     }
   }
 
@@ -180,13 +290,11 @@ public class HashMapVector {
    * Return String of the vector showing the tokens and their weights
    */
   public String toString() {
-    String ret = "";
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // Print the term and its weight, where the value of the map entry is a Weight
-      // and then you need to get the value of the Weight as the weight.
-      ret += entry.getKey() + ": " + entry.getValue().getValue() + " ";
+    StringBuilder ret = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      ret.append(tokenAt(i)).append(": ").append(weights[i]).append(' ');
     }
-    return ret;
+    return ret.toString();
   }
 
   /**
@@ -207,12 +315,9 @@ public class HashMapVector {
     // Stores running sum for dot product of two vectors
     double dotProd = 0;
     // iterate through elements in current vector
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The weight for the token is in the value of the Weight
-      double weight = entry.getValue().getValue();
-      double otherWeight = otherVector.getWeight(token);
+    for (int i = 0; i < size; i++) {
+      double weight = weights[i];
+      double otherWeight = otherVector.getWeight(termIds[i]);
       // Update dot product sum and sum of squares
       dotProd += weight * otherWeight;
       sum += weight * weight;
@@ -227,17 +332,10 @@ public class HashMapVector {
   public double length() {
     // Stores running sum of squares
     double sum = 0;
-    for (Map.Entry<String, Weight> entry : entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      double weight = entry.getValue().getValue();
-      sum += weight * weight;
+    for (int i = 0; i < size; i++) {
+      sum += weights[i] * weights[i];
     }
     return Math.sqrt(sum);
   }
 
 }
-
-
-
-
-
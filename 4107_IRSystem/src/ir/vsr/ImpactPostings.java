@@ -0,0 +1,93 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * The postings of a token sorted by decreasing impact: the token's weight in
+ * a document (IDF * occurrence count) divided by the length of the
+ * document's vector.  Multiplied by the token's weight in a query over the
+ * length of the query vector, a posting's impact is exactly the token's
+ * contribution to the cosine similarity of the document to the query, so
+ * the documents to which a token contributes most come first, ready for
+ * score-at-a-time evaluation.  Postings of equal impact are in increasing
+ * order of doc id.
+ * <p/>
+ * Depends on the IDF of the token and the lengths of the documents, so
+ * must be made again whenever those are recomputed.
+ */
+
+public class ImpactPostings {
+  /**
+   * The ids of the documents where the token occurs, in decreasing order of impact
+   */
+  public final int[] docIds;
+
+  /**
+   * The impact of the token in each document in docIds
+   */
+  public final double[] impacts;
+
+  /**
+   * Sort the postings of a token by impact.
+   *
+   * @param tokenInfo The token's postings, with its IDF computed.
+   * @param docRefs   The indexed documents, with their vector lengths computed.
+   */
+  public ImpactPostings(TokenInfo tokenInfo, List<DocumentReference> docRefs) {
+    int numDocs = tokenInfo.numDocs;
+    int[] allDocIds = new int[numDocs];
+    double[] allImpacts = new double[numDocs];
+    int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+    int[] blockDocIds = new int[TokenInfo.BLOCK_SIZE];
+    int count = 0;
+    for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+      int blockSize = tokenInfo.decodeBlock(block, blockDocIds, tfs);
+      for (int i = 0; i < blockSize; i++) {
+        allDocIds[count] = blockDocIds[i];
+        allImpacts[count] = tokenInfo.idf * tfs[i] / docRefs.get(blockDocIds[i]).length;
+        count++;
+      }
+    }
+    // Key each posting by the number of postings of greater impact, then by
+    // its position, which is in doc id order, and sort the keys
+    double[] sortedImpacts = Arrays.copyOf(allImpacts, numDocs);
+    Arrays.sort(sortedImpacts);
+    long[] keys = new long[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      long numGreater = numDocs - upperBound(sortedImpacts, allImpacts[i]);
+      keys[i] = numGreater << 32 | i;
+    }
+    Arrays.sort(keys);
+    docIds = new int[numDocs];
+    impacts = new double[numDocs];
+    for (int i = 0; i < numDocs; i++) {
+      int posting = (int) keys[i];
+      docIds[i] = allDocIds[posting];
+      impacts[i] = allImpacts[posting];
+    }
+  }
+
+  /**
+   * Return the position in a sorted array just past the last value not
+   * greater than the given one
+   */
+  protected static int upperBound(double[] sorted, double value) {
+    int low = 0;
+    int high = sorted.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (sorted[middle] <= value)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  /**
+   * Return the number of postings
+   */
+  public int size() {
+    return docIds.length;
+  }
+}
@@ -0,0 +1,409 @@
+package ir.vsr;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The on-disk format of a saved InvertedIndex, laid out so that it can be
+ * memory-mapped and read in place. The file consists of a header, followed
+ * by four sections, each mapped as its own buffer, and a fixed size footer
+ * giving the position of each section:
+ * <ul>
+ * <li> the vector length of every document, indexed by doc id
+ * <li> the position of the name of every document, followed by the names,
+ *      each a flag byte, set if the name is the path of the document's file,
+ *      and the name
+ * <li> the IDF, score bounds and compressed postings of every token, in sorted
+ *      token order, as kept in memory by a frozen TokenInfo
+ * <li> the position of every token record, in sorted token order, followed by
+ *      the records, each a token and the position of its postings
+ * </ul>
+ * All positions are absolute offsets in the file and strings are stored as
+ * an int byte count followed by their UTF-8 bytes.  Tokens are sorted by
+ * their UTF-8 bytes, compared unsigned, so that a token is found by
+ * comparing bytes in place.
+ */
+
+public class IndexFile {
+
+  /**
+   * Identifies an index file
+   */
+  public static final int MAGIC = 0x49525658;
+
+  /**
+   * The version of the format. Increment whenever the format changes so that
+   * files written in an older format are rejected.
+   */
+  public static final int VERSION = 5;
+
+  /**
+   * The size of the footer: four section positions and the magic number
+   */
+  protected static final int FOOTER_SIZE = 4 * 8 + 4;
+
+  /**
+   * The type of the indexed documents
+   */
+  public short docType;
+
+  /**
+   * Whether the indexed tokens were stemmed
+   */
+  public boolean stem;
+
+  /**
+   * The directory of the indexed documents, or null if unknown
+   */
+  public File dirFile;
+
+  /**
+   * The number of indexed documents
+   */
+  public int numDocs;
+
+  /**
+   * The number of indexed tokens
+   */
+  public int numTokens;
+
+  /**
+   * The mapped sections of the file and the file positions where they start
+   */
+  protected ByteBuffer docLengths, docPaths, postings, dictionary;
+  protected long docPathsStart, postingsStart, dictionaryStart;
+
+  /**
+   * Open and map an index file.
+   *
+   * @throws IOException If the file cannot be read or is not in the current format version.
+   */
+  public IndexFile(File file) throws IOException {
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size < FOOTER_SIZE + 8)
+        throw new IOException("Not an index file: " + file);
+      ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, size - FOOTER_SIZE, FOOTER_SIZE);
+      long docLengthsStart = footer.getLong();
+      docPathsStart = footer.getLong();
+      postingsStart = footer.getLong();
+      dictionaryStart = footer.getLong();
+      if (footer.getInt() != MAGIC || docLengthsStart > docPathsStart || docPathsStart > postingsStart ||
+          postingsStart > dictionaryStart || dictionaryStart > size - FOOTER_SIZE)
+        throw new IOException("Not an index file: " + file);
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, docLengthsStart);
+      if (header.getInt() != MAGIC)
+        throw new IOException("Not an index file: " + file);
+      int version = header.getInt();
+      if (version != VERSION)
+        throw new IOException("Index file " + file + " has version " + version + ", expected " + VERSION);
+      docType = header.getShort();
+      stem = header.get() != 0;
+      String dirName = readString(header, header.position());
+      dirFile = dirName.equals("") ? null : new File(dirName);
+      header.position(header.position() + 4 + header.getInt(header.position()));
+      numDocs = header.getInt();
+      numTokens = header.getInt();
+      // Map each section as its own buffer
+      docLengths = channel.map(FileChannel.MapMode.READ_ONLY, docLengthsStart, docPathsStart - docLengthsStart);
+      docPaths = channel.map(FileChannel.MapMode.READ_ONLY, docPathsStart, postingsStart - docPathsStart);
+      postings = channel.map(FileChannel.MapMode.READ_ONLY, postingsStart, dictionaryStart - postingsStart);
+      dictionary = channel.map(FileChannel.MapMode.READ_ONLY, dictionaryStart,
+          size - FOOTER_SIZE - dictionaryStart);
+    }
+    finally {
+      // Mappings stay valid after the channel is closed
+      channel.close();
+    }
+  }
+
+  /**
+   * Return the vector length of a document
+   */
+  public double docLength(int docId) {
+    return docLengths.getDouble(8 * docId);
+  }
+
+  /**
+   * Return a reference to a document, giving it its saved vector length
+   */
+  public DocumentReference docReference(int docId) {
+    int position = (int) (docPaths.getLong(8 * docId) - docPathsStart);
+    String name = readString(docPaths, position + 1);
+    if (docPaths.get(position) != 0)
+      return new DocumentReference(new File(name), docLength(docId));
+    return new DocumentReference(name, docLength(docId));
+  }
+
+  /**
+   * Return the token with the given rank in sorted order
+   */
+  public String token(int rank) {
+    long position = dictionary.getLong(8 * rank);
+    return readString(dictionary, (int) (position - dictionaryStart));
+  }
+
+  /**
+   * Return the rank of a token in sorted order, or -1 if it is not indexed.
+   * Compares the token's UTF-8 bytes with those in the file, so that no
+   * string is decoded.
+   */
+  public int findToken(String token) {
+    byte[] bytes = token.getBytes(StandardCharsets.UTF_8);
+    int low = 0;
+    int high = numTokens - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compareToken(mid, bytes);
+      if (comparison < 0)
+        low = mid + 1;
+      else if (comparison > 0)
+        high = mid - 1;
+      else
+        return mid;
+    }
+    return -1;
+  }
+
+  /**
+   * Compare the UTF-8 bytes of the token with the given rank to those of
+   * another token, unsigned, as the tokens are sorted
+   */
+  protected int compareToken(int rank, byte[] bytes) {
+    int position = (int) (dictionary.getLong(8 * rank) - dictionaryStart);
+    int length = dictionary.getInt(position);
+    position = position + 4;
+    for (int i = 0; i < length && i < bytes.length; i++) {
+      int comparison = (dictionary.get(position + i) & 0xff) - (bytes[i] & 0xff);
+      if (comparison != 0)
+        return comparison;
+    }
+    return length - bytes.length;
+  }
+
+  /**
+   * Read the statistics and compressed postings of the token with the given
+   * rank into memory, as when loading the whole index; the postings are
+   * decoded a block at a time as they are visited
+   */
+  public TokenInfo readTokenInfo(int rank) {
+    ByteBuffer buffer = postingsRecord(rank);
+    TokenInfo tokenInfo = new TokenInfo();
+    tokenInfo.idf = buffer.getDouble();
+    tokenInfo.maxImpact = buffer.getDouble();
+    tokenInfo.maxCount = buffer.getInt();
+    tokenInfo.numDocs = buffer.getInt();
+    int numBlocks = tokenInfo.numBlocks();
+    tokenInfo.blockLastDocIds = new int[numBlocks];
+    tokenInfo.blockOffsets = new int[numBlocks];
+    tokenInfo.postings = new byte[buffer.getInt()];
+    IntBuffer ints = buffer.asIntBuffer();
+    ints.get(tokenInfo.blockLastDocIds);
+    ints.get(tokenInfo.blockOffsets);
+    buffer.position(buffer.position() + 8 * numBlocks);
+    buffer.get(tokenInfo.postings);
+    tokenInfo.docIds = null;
+    tokenInfo.tfs = null;
+    return tokenInfo;
+  }
+
+  /**
+   * Read the statistics of the token with the given rank, leaving its block
+   * tables and compressed postings in the mapped file to be decoded from
+   * there a block at a time as they are visited, so that nothing is copied
+   */
+  public TokenInfo mappedTokenInfo(int rank) {
+    ByteBuffer buffer = postingsRecord(rank);
+    double idf = buffer.getDouble();
+    double maxImpact = buffer.getDouble();
+    int maxCount = buffer.getInt();
+    int numDocs = buffer.getInt();
+    int postingsLength = buffer.getInt();
+    return new MappedTokenInfo(buffer.slice(), idf, maxImpact, maxCount, numDocs, postingsLength);
+  }
+
+  /**
+   * Return a view of the postings section positioned at the record of the
+   * token with the given rank, of its own so that concurrent readers do not
+   * share a position
+   */
+  protected ByteBuffer postingsRecord(int rank) {
+    long recordPosition = dictionary.getLong(8 * rank) - dictionaryStart;
+    int tokenLength = dictionary.getInt((int) recordPosition);
+    long position = dictionary.getLong((int) recordPosition + 4 + tokenLength);
+    ByteBuffer buffer = postings.duplicate();
+    buffer.position((int) (position - postingsStart));
+    return buffer;
+  }
+
+  /**
+   * Read a string stored at the given position of a buffer
+   */
+  protected static String readString(ByteBuffer buffer, int position) {
+    int length = buffer.getInt(position);
+    byte[] bytes = new byte[length];
+    ByteBuffer source = buffer.duplicate();
+    source.position(position + 4);
+    source.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Write an index whose segments have all been merged into its main index,
+   * with no documents deleted, to a file in this format.  The file is
+   * written under a temporary name and then moved into place, so an
+   * interrupted write leaves any previous index file intact, and a failed
+   * one removes the temporary file.
+   */
+  public static void write(InvertedIndex index, File file) throws IOException {
+    File tempFile = new File(file.getPath() + ".tmp");
+    boolean moved = false;
+    try {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      try {
+        // Header
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeShort(index.docType);
+        out.writeBoolean(index.stem);
+        writeString(out, index.dirFile == null ? "" : index.dirFile.getPath());
+        // Tokens in sorted order, with those of IDF 0 that queries leave out,
+        // so that documents appended to the loaded index count them
+        String[] tokens = new String[index.numTerms];
+        byte[][] tokenBytes = new byte[tokens.length][];
+        for (int rank = 0; rank < tokens.length; rank++) {
+          tokens[rank] = TermDictionary.GLOBAL.term(index.termIds[rank]);
+          tokenBytes[rank] = tokens[rank].getBytes(StandardCharsets.UTF_8);
+        }
+        sortTokens(tokens, tokenBytes);
+        out.writeInt(index.docRefs.size());
+        out.writeInt(tokens.length);
+        // Document lengths
+        long docLengthsStart = position(out);
+        for (DocumentReference docRef : index.docRefs) {
+          out.writeDouble(docRef.length);
+        }
+        // Document file paths, or names for documents without files,
+        // preceded by their positions
+        long docPathsStart = position(out);
+        byte[][] paths = new byte[index.docRefs.size()][];
+        for (int docId = 0; docId < paths.length; docId++) {
+          DocumentReference docRef = index.docRefs.get(docId);
+          String name = docRef.file == null ? docRef.name : docRef.file.getPath();
+          paths[docId] = name.getBytes(StandardCharsets.UTF_8);
+        }
+        long position = docPathsStart + 8L * paths.length;
+        for (byte[] path : paths) {
+          out.writeLong(position);
+          position = position + 1 + 4 + path.length;
+        }
+        for (int docId = 0; docId < paths.length; docId++) {
+          out.writeBoolean(index.docRefs.get(docId).file != null);
+          out.writeInt(paths[docId].length);
+          out.write(paths[docId]);
+        }
+        // Postings of each token in sorted order, remembering where each starts
+        long postingsStart = position(out);
+        long[] postingsPositions = new long[tokens.length];
+        for (int rank = 0; rank < tokens.length; rank++) {
+          // Saved with no segments or deletions, so the main postings are all
+          TokenInfo tokenInfo = index.tokenInfos[TermDictionary.GLOBAL.lookup(tokens[rank])];
+          postingsPositions[rank] = position(out);
+          out.writeDouble(tokenInfo.idf);
+          out.writeDouble(tokenInfo.maxImpact);
+          out.writeInt(tokenInfo.maxCount);
+          out.writeInt(tokenInfo.numDocs);
+          tokenInfo.freeze();
+          out.writeInt(tokenInfo.postings.length);
+          for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+            out.writeInt(tokenInfo.blockLastDocIds[block]);
+          }
+          for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+            out.writeInt(tokenInfo.blockOffsets[block]);
+          }
+          out.write(tokenInfo.postings);
+        }
+        // Dictionary of token records, preceded by their positions
+        long dictionaryStart = position(out);
+        long recordPosition = dictionaryStart + 8L * tokens.length;
+        for (int rank = 0; rank < tokens.length; rank++) {
+          out.writeLong(recordPosition);
+          recordPosition = recordPosition + 4 + tokenBytes[rank].length + 8;
+        }
+        for (int rank = 0; rank < tokens.length; rank++) {
+          out.writeInt(tokenBytes[rank].length);
+          out.write(tokenBytes[rank]);
+          out.writeLong(postingsPositions[rank]);
+        }
+        // Footer
+        out.writeLong(docLengthsStart);
+        out.writeLong(docPathsStart);
+        out.writeLong(postingsStart);
+        out.writeLong(dictionaryStart);
+        out.writeInt(MAGIC);
+      }
+      finally {
+        out.close();
+      }
+      Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      moved = true;
+    }
+    finally {
+      // Leave no partly written file behind if serialization fails
+      if (!moved)
+        tempFile.delete();
+    }
+  }
+
+  /**
+   * Sort tokens and their UTF-8 bytes alike, by their bytes compared unsigned
+   */
+  protected static void sortTokens(String[] tokens, final byte[][] tokenBytes) {
+    Integer[] order = new Integer[tokens.length];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer i, Integer j) {
+        byte[] a = tokenBytes[i];
+        byte[] b = tokenBytes[j];
+        for (int k = 0; k < a.length && k < b.length; k++) {
+          int comparison = (a[k] & 0xff) - (b[k] & 0xff);
+          if (comparison != 0)
+            return comparison;
+        }
+        return a.length - b.length;
+      }
+    });
+    String[] sortedTokens = new String[tokens.length];
+    byte[][] sortedBytes = new byte[tokens.length][];
+    for (int rank = 0; rank < order.length; rank++) {
+      sortedTokens[rank] = tokens[order[rank]];
+      sortedBytes[rank] = tokenBytes[order[rank]];
+    }
+    System.arraycopy(sortedTokens, 0, tokens, 0, tokens.length);
+    System.arraycopy(sortedBytes, 0, tokenBytes, 0, tokens.length);
+  }
+
+  protected static void writeString(DataOutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Return the number of bytes written so far, which DataOutputStream
+   * stops counting at Integer.MAX_VALUE; since the sections are mapped as
+   * single buffers a larger file could not be read back anyway.
+   */
+  protected static long position(DataOutputStream out) throws IOException {
+    if (out.size() == Integer.MAX_VALUE)
+      throw new IOException("Index too large to save, over " + Integer.MAX_VALUE + " bytes");
+    return out.size();
+  }
+}
@@ -0,0 +1,198 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * The postings of a contiguous range of documents appended to an
+ * InvertedIndex after it was built, kept apart from the postings of the
+ * main index until they are merged into it.  Doc ids within a segment start
+ * from 0; the index numbers its documents on from those of the main index
+ * and of the segments before.
+ * <p/>
+ * Documents are added only while a segment is live.  Once frozen, its
+ * postings are compressed and never change, and only the set of its
+ * documents that have been deleted grows, until a merge leaves them out.
+ * The bounds of a frozen segment's tokens are computed with an IDF of 1,
+ * to be rescaled by the IDF of the token across the whole index.
+ */
+
+public class IndexSegment {
+  /**
+   * The documents in the segment, indexed by doc id within it
+   */
+  protected final List<DocumentReference> docRefs;
+
+  /**
+   * The TokenInfo of each token in the segment, indexed by the token's id in
+   * TermDictionary.GLOBAL, and null for ids of tokens not in the segment.
+   */
+  protected TokenInfo[] tokenInfos;
+
+  /**
+   * The ids of the tokens in the segment, in the order they were first added.
+   * Only the first numTerms entries are valid.
+   */
+  protected int[] termIds;
+
+  /**
+   * The number of tokens in the segment
+   */
+  protected int numTerms;
+
+  /**
+   * The doc ids of the deleted documents, or null if none are
+   */
+  protected BitSet deletions = null;
+
+  /**
+   * Whether the postings are frozen
+   */
+  protected boolean frozen = false;
+
+  /**
+   * Create an empty live segment
+   */
+  public IndexSegment() {
+    docRefs = new ArrayList<DocumentReference>();
+    tokenInfos = new TokenInfo[16];
+    termIds = new int[16];
+    numTerms = 0;
+  }
+
+  /**
+   * Make a segment of the documents and postings of an index, taking them
+   * over as they are.
+   *
+   * @param index     The index, whose doc ids start from 0.
+   * @param docRefs   Its documents, indexed by doc id.
+   * @param deletions The ids of those deleted, or null if none are.
+   */
+  protected IndexSegment(InvertedIndex index, List<DocumentReference> docRefs, BitSet deletions) {
+    this.docRefs = docRefs;
+    tokenInfos = index.tokenInfos;
+    termIds = index.termIds;
+    numTerms = index.numTerms;
+    this.deletions = deletions;
+  }
+
+  /**
+   * Add the documents of a partial index after those already in the segment,
+   * offsetting its doc ids accordingly.
+   */
+  public void addPartialIndex(InvertedIndex partial) {
+    if (frozen)
+      throw new IllegalStateException("Cannot add documents to a frozen IndexSegment");
+    int docIdOffset = docRefs.size();
+    for (int rank = 0; rank < partial.numTerms; rank++) {
+      int termId = partial.termIds[rank];
+      TokenInfo tokenInfo = getTokenInfo(termId);
+      if (tokenInfo == null) {
+        tokenInfo = new TokenInfo();
+        if (termId >= tokenInfos.length) {
+          int capacity = Math.max(termId + 1, Math.max(2 * tokenInfos.length, TermDictionary.GLOBAL.size()));
+          tokenInfos = Arrays.copyOf(tokenInfos, capacity);
+        }
+        if (numTerms == termIds.length)
+          termIds = Arrays.copyOf(termIds, 2 * numTerms);
+        tokenInfos[termId] = tokenInfo;
+        termIds[numTerms++] = termId;
+      }
+      tokenInfo.addOccurrences(partial.tokenInfos[termId], docIdOffset);
+    }
+    docRefs.addAll(partial.docRefs);
+  }
+
+  /**
+   * Compress the postings of every token, once the lengths of the
+   * documents' vectors are set, computing the bounds on its contribution to
+   * their scores with an IDF of 1.  No more documents may be added.
+   */
+  public void freeze() {
+    if (frozen)
+      return;
+    int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+    int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+    for (int rank = 0; rank < numTerms; rank++) {
+      TokenInfo tokenInfo = tokenInfos[termIds[rank]];
+      double maxImpact = 0.0;
+      int maxCount = 0;
+      for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+        int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+        for (int i = 0; i < blockSize; i++) {
+          maxImpact = Math.max(maxImpact, tfs[i] / docRefs.get(docIds[i]).length);
+          maxCount = Math.max(maxCount, tfs[i]);
+        }
+      }
+      tokenInfo.idf = 1.0;
+      tokenInfo.maxImpact = maxImpact;
+      tokenInfo.maxCount = maxCount;
+      tokenInfo.freeze();
+    }
+    frozen = true;
+  }
+
+  /**
+   * Return true once the postings are frozen
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Return the postings in the segment of the token with the given id,
+   * or null if it occurs in none of its documents.
+   */
+  public TokenInfo getTokenInfo(int termId) {
+    return termId < tokenInfos.length ? tokenInfos[termId] : null;
+  }
+
+  /**
+   * Return the id of a token in the segment, from rank 0 up to size(), in
+   * the order the tokens were first added.
+   */
+  public int termId(int rank) {
+    return termIds[rank];
+  }
+
+  /**
+   * Return the number of tokens in the segment
+   */
+  public int size() {
+    return numTerms;
+  }
+
+  /**
+   * Return the number of documents in the segment, deleted or not
+   */
+  public int numDocs() {
+    return docRefs.size();
+  }
+
+  /**
+   * Return the number of deleted documents in the segment
+   */
+  public int numDeleted() {
+    return deletions == null ? 0 : deletions.cardinality();
+  }
+
+  /**
+   * Return true if the document with the given id in the segment is deleted
+   */
+  public boolean isDeleted(int docId) {
+    return deletions != null && deletions.get(docId);
+  }
+
+  /**
+   * Delete the document with the given id in the segment
+   *
+   * @return False if it was deleted already.
+   */
+  public boolean delete(int docId) {
+    if (deletions == null)
+      deletions = new BitSet(docRefs.size());
+    if (deletions.get(docId))
+      return false;
+    deletions.set(docId);
+    return true;
+  }
+}
@@ -2,6 +2,9 @@ package ir.vsr;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.lang.*;
 
 import ir.utilities.*;
@@ -25,13 +28,26 @@ public class InvertedIndex {
   public static final int MAX_RETRIEVALS = 1000;//changed to 100, was 10;
 
   /**
-   * A HashMap where tokens are indexed. Each indexed token maps
-   * to a TokenInfo.
+   * The TokenInfo of each indexed token, indexed by the token's id in
+   * TermDictionary.GLOBAL, and null for ids of tokens not in the index.
    */
-  public Map<String, TokenInfo> tokenHash = null;
+  public TokenInfo[] tokenInfos = null;
+
+  /**
+   * The ids of the indexed tokens, in the order they were first indexed.
+   * Only the first numTerms entries are valid.
+   */
+  protected int[] termIds = null;
+
+  /**
+   * The number of indexed tokens
+   */
+  protected int numTerms = 0;
 
   /**
    * A list of all indexed documents.  Elements are DocumentReference's.
+   * The position of a document in this list is its dense id, which is what
+   * the postings in each TokenInfo refer to.
    */
   public List<DocumentReference> docRefs = null;
 
@@ -55,6 +71,195 @@ public class InvertedIndex {
    */
   public boolean feedback = false;
 
+  /**
+   * Whether top-k retrieval should use MaxScore dynamic pruning to skip
+   * documents that cannot make the top k.  Produces the same ranking as
+   * scoring every document, but only pays off when the top k scores are well
+   * above the bounds of the weaker query tokens, which the short documents of
+   * a tweet collection make rare, so it is off by default.
+   */
+  public boolean dynamicPruning = false;
+
+  /**
+   * Relative slack allowed for floating point error when comparing an
+   * upper bound on a score to the current k'th best score
+   */
+  protected static final double PRUNING_SLACK = 1e-9;
+
+  /**
+   * The number of postings per requested retrieval below which dynamic pruning
+   * costs more than simply scoring every posting
+   */
+  protected static final int PRUNING_MIN_POSTINGS_PER_RETRIEVAL = 8;
+
+  /**
+   * Whether top-k retrieval should be score-at-a-time over the postings of
+   * each query token sorted by impact, the token's contribution to the
+   * score of each document, stopping once the postings left cannot change
+   * the top k.  For latency-critical interactive search; the sorted
+   * postings of each token are made the first time a query uses it and kept
+   * until its IDF or the document lengths change, so they cost memory as
+   * well.  Takes precedence over dynamicPruning.  Like MaxScore,
+   * exact mode seldom stops early enough on the short postings of a tweet
+   * collection to beat scoring every document; approximate mode does.
+   */
+  public boolean impactOrdered = false;
+
+  /**
+   * Whether impact-ordered retrieval may stop as soon as no document it has
+   * not yet seen could enter the top k, ranking documents by the part of
+   * their score accumulated so far.  If false, it goes on until the top k
+   * are known to be the same as when scoring every document, then scores
+   * them exactly, giving the same ranking and scores.
+   */
+  public boolean approximateImpactOrdered = false;
+
+  /**
+   * The number of candidates per requested retrieval that exact
+   * impact-ordered retrieval scores exactly rather than reading more
+   * postings to rule some out
+   */
+  protected static final int IMPACT_MAX_CANDIDATES_PER_RETRIEVAL = 2;
+
+  /**
+   * Whether scoring every document indexed under the tokens of a query is
+   * split by doc id into partitions scored at once on the threads of
+   * scoringPool, each term at a time into an accumulator of its own.  Since
+   * every document still adds up its tokens in the same order, the ranking
+   * and scores are the same as on one thread.  Pays off for the long queries
+   * relevance feedback expands a query into; queries whose tokens index too
+   * few documents to be worth splitting are scored on the calling thread.
+   */
+  public boolean parallelScoring = false;
+
+  /**
+   * The pool whose threads score the partitions of a query when
+   * parallelScoring is set, one partition per thread
+   */
+  public ForkJoinPool scoringPool = ForkJoinPool.commonPool();
+
+  /**
+   * The fewest postings worth scoring in a partition of their own
+   */
+  protected static final int MIN_POSTINGS_PER_SCORING_PARTITION = 16384;
+
+  /**
+   * The number of threads that index documents in parallel when the index
+   * is built, given to its constructor
+   */
+  protected int indexingThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The share of the documents that may be appended or deleted before an
+   * index with lazy statistics computes them afresh
+   */
+  public double statisticsRefreshThreshold = 0.1;
+
+  /**
+   * The statistics of an index with lazy statistics, or null.  See
+   * setLazyStatistics.
+   */
+  protected CorpusStatistics statistics = null;
+
+  /**
+   * The fewest documents worth handing to a thread of their own when indexing
+   */
+  protected static final int MIN_DOCUMENTS_PER_INDEXING_THREAD = 1000;
+
+  /**
+   * The cache of recent query results used by retrieve, or null to score
+   * every query afresh
+   */
+  public QueryCache queryCache = null;
+
+  /**
+   * The accumulator of document scores reused by every call to retrieve on
+   * the same thread
+   */
+  protected final ThreadLocal<ScoreAccumulator> accumulators = new ThreadLocal<ScoreAccumulator>();
+
+  /**
+   * The segments of documents appended by addDocuments since they were last
+   * merged into the main index, in doc id order: frozen segments, then the
+   * live segment if there is one.  While there are any, or documents of the
+   * main index are deleted, the postings of each token are read through a
+   * SegmentedTokenInfo.
+   */
+  protected final List<IndexSegment> segments = new ArrayList<IndexSegment>();
+
+  /**
+   * The segment documents are appended to, or null if the next append
+   * should start one
+   */
+  protected IndexSegment liveSegment = null;
+
+  /**
+   * The id of the first document of each segment
+   */
+  protected int[] segmentBases = new int[0];
+
+  /**
+   * The doc ids of the deleted documents of the main index, or null if none are
+   */
+  protected BitSet deletions = null;
+
+  /**
+   * The id of each document not deleted by name, made when first needed
+   * after merges renumber the documents, or null
+   */
+  protected Map<String, Integer> docIdsByName = null;
+
+  /**
+   * The SegmentedTokenInfo made for each token id since documents were last
+   * appended, deleted or merged, or null while there are no segments and no
+   * deleted documents
+   */
+  protected AtomicReferenceArray<TokenInfo> segmentedTokenInfos = null;
+
+  /**
+   * The number of documents appended to a live segment before it is frozen
+   */
+  public static final int MAX_LIVE_SEGMENT_DOCS = 1000;
+
+  /**
+   * The number of segments of the same tier that the merge policy merges into one
+   */
+  public int segmentsPerTier = 10;
+
+  /**
+   * The share of the documents of the main index that the segments may hold
+   * before the merge policy merges them all into it
+   */
+  public double maxSegmentShare = 0.1;
+
+  /**
+   * The share of the documents of the main index, or of a segment, that may
+   * be deleted before the merge policy merges them away
+   */
+  public double maxDeletedShare = 0.2;
+
+  /**
+   * The postings per second that background merges copy at most
+   */
+  public double mergePostingsPerSecond = 1.0e7;
+
+  /**
+   * Held for reading by every retrieval and for writing by every change to
+   * the documents indexed, so that documents may be appended and merged
+   * while queries run on other threads
+   */
+  protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  /**
+   * Held while segments are merged into the main index, one merge at a time
+   */
+  protected final Object mergeLock = new Object();
+
+  /**
+   * The thread that merges segments in the background, or null
+   */
+  protected ScheduledExecutorService merger = null;
+
   /**
    * Create an inverted index of the documents in a directory.
    *
@@ -64,11 +269,27 @@ public class InvertedIndex {
    * @param feedback Whether relevance feedback should be used.
    */
   public InvertedIndex(File dirFile, short docType, boolean stem, boolean feedback) {
+    this(dirFile, docType, stem, feedback, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create an inverted index of the documents in a directory, indexing them
+   * on the given number of threads.
+   *
+   * @param dirFile         The directory of files to index.
+   * @param docType         The type of documents to index (See docType in DocumentIterator)
+   * @param stem            Whether tokens should be stemmed with Porter stemmer.
+   * @param feedback        Whether relevance feedback should be used.
+   * @param indexingThreads The number of threads that index the documents.
+   */
+  public InvertedIndex(File dirFile, short docType, boolean stem, boolean feedback, int indexingThreads) {
+    this.indexingThreads = indexingThreads;
     this.dirFile = dirFile;
     this.docType = docType;
     this.stem = stem;
     this.feedback = feedback;
-    tokenHash = new HashMap<String, TokenInfo>();
+    tokenInfos = new TokenInfo[16];
+    termIds = new int[16];
     docRefs = new ArrayList<DocumentReference>();
     indexDocuments();
   }
@@ -80,17 +301,62 @@ public class InvertedIndex {
    * @param examples A List containing the Example objects for text categorization to index
    */
   public InvertedIndex(List<Example> examples) {
-    tokenHash = new HashMap<String, TokenInfo>();
+    tokenInfos = new TokenInfo[16];
+    termIds = new int[16];
     docRefs = new ArrayList<DocumentReference>();
     indexDocuments(examples);
   }
 
+  /**
+   * Create an inverted index of named string documents, such as the tweets
+   * of a single file, indexing each as it is read from the iterator so that
+   * no document needs a file of its own.  Relevance feedback rereads the
+   * documents rated from their files, so cannot be used.
+   *
+   * @param docs     The documents to index, each with a name to retrieve it by.
+   * @param stem     Whether the documents' tokens were stemmed with Porter stemmer.
+   * @param feedback Whether relevance feedback should be used; must be false.
+   */
+  public InvertedIndex(Iterator<TextStringDocument> docs, boolean stem, boolean feedback) {
+    this(docs, stem, feedback, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create an inverted index of named string documents as the constructor
+   * above does, indexing them on the given number of threads.
+   *
+   * @param docs            The documents to index, each with a name to retrieve it by.
+   * @param stem            Whether the documents' tokens were stemmed with Porter stemmer.
+   * @param feedback        Whether relevance feedback should be used; must be false.
+   * @param indexingThreads The number of threads that index the documents.
+   */
+  public InvertedIndex(Iterator<TextStringDocument> docs, boolean stem, boolean feedback, int indexingThreads) {
+    this.indexingThreads = indexingThreads;
+    if (feedback)
+      throw new IllegalArgumentException("Relevance feedback needs documents indexed from files");
+    this.stem = stem;
+    this.feedback = feedback;
+    tokenInfos = new TokenInfo[16];
+    termIds = new int[16];
+    docRefs = new ArrayList<DocumentReference>();
+    indexDocuments(docs);
+  }
+
+  /**
+   * Create an empty inverted index, to be filled by load.
+   */
+  protected InvertedIndex() {
+    tokenInfos = new TokenInfo[16];
+    termIds = new int[16];
+    docRefs = new ArrayList<DocumentReference>();
+  }
+
 
   /**
    * Index the documents in dirFile.
    */
   protected void indexDocuments() {
-    if (!tokenHash.isEmpty() || !docRefs.isEmpty()) {
+    if (numTerms != 0 || !docRefs.isEmpty()) {
       // Currently can only index one set of documents when an index is created
       throw new IllegalStateException("Cannot indexDocuments more than once in the same InvertedIndex");
     }
@@ -98,8 +364,117 @@ public class InvertedIndex {
     DocumentIterator docIter = new DocumentIterator(dirFile, docType, stem);
     System.out.println("Indexing documents in " + dirFile);
     System.out.println("hand on, I am indexing..");//added:2018-02-10: Junhan Liu;
-    // Loop, processing each of the documents
+    // Split the documents into contiguous ranges, index each range into a
+    // partial index on its own thread, and merge the partial indexes in order
+    // so that doc ids are positions in the directory listing just as when
+    // indexing on a single thread
+    int numThreads = Math.min(indexingThreads, docIter.numRemaining() / MIN_DOCUMENTS_PER_INDEXING_THREAD);
+    if (numThreads <= 1) {
+      mergePartialIndex(indexPartition(docIter));
+    }
+    else {
+      ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+      try {
+        List<Future<InvertedIndex>> partials = new ArrayList<Future<InvertedIndex>>();
+        for (final DocumentIterator range : docIter.split(numThreads)) {
+          partials.add(executor.submit(new Callable<InvertedIndex>() {
+            public InvertedIndex call() {
+              return indexPartition(range);
+            }
+          }));
+        }
+        for (Future<InvertedIndex> partial : partials) {
+          mergePartialIndex(awaitPartialIndex(partial));
+        }
+      }
+      finally {
+        executor.shutdownNow();
+      }
+    }
+    // Now that all documents have been processed, we can calculate the IDF weights for
+    // all tokens and the resulting lengths of all weighted document vectors.
+    computeIDFandDocumentLengths();
+    System.out.println("Indexed " + docRefs.size() + " documents with " + size() + " unique terms.");
+  }
+
+
+  /**
+   * Index named string documents as they are read from an iterator.
+   */
+  protected void indexDocuments(Iterator<TextStringDocument> docs) {
+    if (numTerms != 0 || !docRefs.isEmpty()) {
+      // Currently can only index one set of documents when an index is created
+      throw new IllegalStateException("Cannot indexDocuments more than once in the same InvertedIndex");
+    }
+    if (indexingThreads <= 1) {
+      while (docs.hasNext()) {
+        TextStringDocument doc = docs.next();
+        indexDocument(new DocumentReference(doc.name, 0.0), doc.hashMapVector());
+      }
+    }
+    else {
+      // Hand batches of documents to the indexing threads as they are read,
+      // merging the partial index of each batch in order.  Only a few batches
+      // per thread are read ahead, so memory stays bounded however many
+      // documents there are.
+      ExecutorService executor = Executors.newFixedThreadPool(indexingThreads);
+      try {
+        Deque<Future<InvertedIndex>> partials = new ArrayDeque<Future<InvertedIndex>>();
+        while (docs.hasNext()) {
+          final List<TextStringDocument> batch = new ArrayList<TextStringDocument>();
+          while (docs.hasNext() && batch.size() < MIN_DOCUMENTS_PER_INDEXING_THREAD) {
+            batch.add(docs.next());
+          }
+          partials.addLast(executor.submit(new Callable<InvertedIndex>() {
+            public InvertedIndex call() {
+              return indexPartition(batch);
+            }
+          }));
+          if (partials.size() > 2 * indexingThreads)
+            mergePartialIndex(awaitPartialIndex(partials.removeFirst()));
+        }
+        while (!partials.isEmpty()) {
+          mergePartialIndex(awaitPartialIndex(partials.removeFirst()));
+        }
+      }
+      finally {
+        executor.shutdownNow();
+      }
+    }
+    // Now that all documents have been processed, we can calculate the IDF weights for
+    // all tokens and the resulting lengths of all weighted document vectors.
+    computeIDFandDocumentLengths();
+    System.out.println("Indexed " + docRefs.size() + " documents with " + size() + " unique terms.");
+  }
 
+  /**
+   * Index the documents in the List of Examples for text categorization.
+   */
+  public void indexDocuments(List<Example> examples) {
+    if (numTerms != 0 || !docRefs.isEmpty()) {
+      // Currently can only index one set of documents when an index is created
+      throw new IllegalStateException("Cannot indexDocuments more than once in the same InvertedIndex");
+    }
+    // Loop, processing each of the examples
+    for (Example example : examples) {
+      FileDocument doc = example.getDocument();
+      // Create a document vector for this document
+      HashMapVector vector = example.getHashMapVector();
+      indexDocument(doc, vector);
+    }
+    // Now that all documents have been processed, we can calculate the IDF weights for
+    // all tokens and the resulting lengths of all weighted document vectors.
+    computeIDFandDocumentLengths();
+    System.out.println("Indexed " + docRefs.size() + " documents with " + size() + " unique terms.");
+  }
+
+  /**
+   * Index the documents of an iterator into a new partial index, whose doc
+   * ids start from 0.  Called on an indexing thread, so it touches nothing
+   * shared with other threads.
+   */
+  protected static InvertedIndex indexPartition(DocumentIterator docIter) {
+    InvertedIndex partial = new InvertedIndex();
     while (docIter.hasMoreDocuments()) {
       FileDocument doc = docIter.nextDocument();
       // Create a document vector for this document
@@ -108,112 +483,1089 @@ public class InvertedIndex {
        */
       //System.out.print(doc.file.getName() + ","); //commented:2018-02-10 by Junhan Liu;
       HashMapVector vector = doc.hashMapVector();
-      indexDocument(doc, vector);
+      partial.indexDocument(doc, vector);
     }
-    // Now that all documents have been processed, we can calculate the IDF weights for
-    // all tokens and the resulting lengths of all weighted document vectors.
-    computeIDFandDocumentLengths();
-    System.out.println("Indexed " + docRefs.size() + " documents with " + size() + " unique terms.");
+    return partial;
+  }
+
+  /**
+   * Index a batch of named string documents into a new partial index, whose
+   * doc ids start from 0.  Called on an indexing thread.
+   */
+  protected static InvertedIndex indexPartition(List<TextStringDocument> docs) {
+    InvertedIndex partial = new InvertedIndex();
+    for (TextStringDocument doc : docs) {
+      partial.indexDocument(new DocumentReference(doc.name, 0.0), doc.hashMapVector());
+    }
+    return partial;
+  }
+
+  /**
+   * Wait for a partial index being built on an indexing thread, rethrowing
+   * any exception thrown while building it.
+   */
+  protected static InvertedIndex awaitPartialIndex(Future<InvertedIndex> partial) {
+    try {
+      return partial.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while indexing", e);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IllegalStateException("Failed indexing", e.getCause());
+    }
+  }
+
+  /**
+   * Add the documents of a partial index after those already indexed,
+   * offsetting its doc ids accordingly.
+   */
+  protected void mergePartialIndex(InvertedIndex partial) {
+    int docIdOffset = docRefs.size();
+    docRefs.addAll(partial.docRefs);
+    for (int rank = 0; rank < partial.numTerms; rank++) {
+      int termId = partial.termIds[rank];
+      TokenInfo partialInfo = partial.tokenInfos[termId];
+      TokenInfo tokenInfo = mainTokenInfo(termId);
+      if (tokenInfo == null && docIdOffset == 0) {
+        // The first partial's postings can be taken over as they are
+        putTokenInfo(termId, partialInfo);
+        continue;
+      }
+      if (tokenInfo == null) {
+        tokenInfo = new TokenInfo();
+        putTokenInfo(termId, tokenInfo);
+      }
+      tokenInfo.addOccurrences(partialInfo, docIdOffset);
+    }
+  }
+
+  /**
+   * Index the given document using its corresponding vector
+   */
+  protected void indexDocument(FileDocument doc, HashMapVector vector) {
+    // Create a reference to this document
+    indexDocument(new DocumentReference(doc), vector);
+  }
+
+  /**
+   * Index the document with the given reference using its corresponding vector
+   */
+  protected void indexDocument(DocumentReference docRef, HashMapVector vector) {
+    // The id of this document is its position in the list of documents indexed
+    int docId = docRefs.size();
+    // Add this document to the list of documents indexed
+    docRefs.add(docRef);
+    // Iterate through each of the tokens in the document
+    for (int i = 0; i < vector.size(); i++) {
+      int termId = vector.termIdAt(i);
+      // The count for the token is its weight in the vector
+      int count = (int) vector.weightAt(i);
+      // Add an occurrence of this token to the inverted index pointing to this document
+      indexToken(termId, count, docId);
+    }
+  }
+
+  /**
+   * Add a token occurrence to the index.
+   *
+   * @param termId The id of the token to index.
+   * @param count  The number of times it occurs in the document.
+   * @param docId  The id of the Document it occurs in.
+   */
+  protected void indexToken(int termId, int count, int docId) {
+    // Find this token in the index
+    TokenInfo tokenInfo = mainTokenInfo(termId);
+    if (tokenInfo == null) {
+      // If this is a new token, create info for it to put in the table
+      tokenInfo = new TokenInfo();
+      putTokenInfo(termId, tokenInfo);
+    }
+    // Add a new occurrence for this token to its info
+    tokenInfo.addOccurrence(docId, count);
+  }
+
+  /**
+   * Add a token not yet in the index with the given information.
+   */
+  protected void putTokenInfo(int termId, TokenInfo tokenInfo) {
+    if (termId >= tokenInfos.length) {
+      // Make room for every id assigned so far, as later documents will likely use them
+      int capacity = Math.max(termId + 1, Math.max(2 * tokenInfos.length, TermDictionary.GLOBAL.size()));
+      tokenInfos = Arrays.copyOf(tokenInfos, capacity);
+    }
+    if (numTerms == termIds.length)
+      termIds = Arrays.copyOf(termIds, 2 * numTerms);
+    tokenInfos[termId] = tokenInfo;
+    termIds[numTerms++] = termId;
+  }
+
+  /**
+   * Return the postings of the token with the given id in the main index as
+   * they are, even with an IDF of 0, or null if it is not there
+   */
+  protected TokenInfo mainTokenInfo(int termId) {
+    return termId < tokenInfos.length ? tokenInfos[termId] : null;
+  }
+
+  /**
+   * Return the information for the token with the given id in the index,
+   * or null if it is not indexed.  While there are segments of appended
+   * documents or deleted documents, this is a SegmentedTokenInfo of its
+   * postings in them all, leaving out the deleted documents.
+   */
+  public TokenInfo getTokenInfo(int termId) {
+    TokenInfo tokenInfo = mainTokenInfo(termId);
+    if (segmentedTokenInfos == null)
+      // Tokens in every document stay indexed with an IDF of 0, but add nothing
+      return tokenInfo == null || tokenInfo.idf == 0.0 ? null : tokenInfo;
+    return getSegmentedTokenInfo(termId, tokenInfo);
+  }
+
+  /**
+   * Return the postings of a token in the main index and every segment,
+   * made the first time they are needed since the segments last changed,
+   * or null if the token occurs in no document, or in every one, which
+   * leaves it an IDF of 0.  With lazy statistics, its IDF is the cached one.
+   *
+   * @param mainInfo The token's postings in the main index, or null.
+   */
+  protected TokenInfo getSegmentedTokenInfo(int termId, TokenInfo mainInfo) {
+    AtomicReferenceArray<TokenInfo> made = segmentedTokenInfos;
+    if (termId < made.length() && made.get(termId) != null)
+      return made.get(termId);
+    int numParts = segments.size() + 1;
+    TokenInfo[] parts = new TokenInfo[numParts];
+    int[] bases = new int[numParts];
+    BitSet[] partDeletions = new BitSet[numParts];
+    numParts = 0;
+    if (mainInfo != null) {
+      parts[0] = mainInfo;
+      partDeletions[0] = deletions;
+      numParts++;
+    }
+    for (int s = 0; s < segments.size(); s++) {
+      IndexSegment segment = segments.get(s);
+      TokenInfo part = segment.getTokenInfo(termId);
+      if (part != null) {
+        parts[numParts] = part;
+        bases[numParts] = segmentBases[s];
+        partDeletions[numParts] = segment.deletions;
+        numParts++;
+      }
+    }
+    if (numParts == 0)
+      return null;
+    TokenInfo tokenInfo;
+    if (statistics == null)
+      tokenInfo = new SegmentedTokenInfo(Arrays.copyOf(parts, numParts), Arrays.copyOf(bases, numParts),
+          Arrays.copyOf(partDeletions, numParts), docRefs);
+    else {
+      double idf = statistics.idf(termId);
+      if (idf == 0.0)
+        return null;
+      // The main index's postings hold the cached IDF, so serve alone
+      if (numParts == 1 && parts[0] == mainInfo && deletions == null)
+        tokenInfo = mainInfo;
+      else
+        tokenInfo = new SegmentedTokenInfo(Arrays.copyOf(parts, numParts), Arrays.copyOf(bases, numParts),
+            Arrays.copyOf(partDeletions, numParts), idf, docRefs);
+    }
+    if (tokenInfo.numDocs == 0 || tokenInfo.idf == 0.0)
+      return null;
+    if (termId >= made.length())
+      return tokenInfo;
+    // If another thread made them at the same time, both use the same
+    made.compareAndSet(termId, null, tokenInfo);
+    return made.get(termId);
+  }
+
+  /**
+   * Return the number of documents in the main index and every segment in
+   * which the token with the given id occurs
+   */
+  protected int documentFrequency(int termId) {
+    TokenInfo tokenInfo = mainTokenInfo(termId);
+    int numDocs = tokenInfo == null ? 0 : tokenInfo.numDocs;
+    for (IndexSegment segment : segments) {
+      TokenInfo part = segment.getTokenInfo(termId);
+      if (part != null)
+        numDocs = numDocs + part.numDocs;
+    }
+    return numDocs;
+  }
+
+  /**
+   * Return the number of documents in the main index, deleted or not
+   */
+  protected int numMainDocs() {
+    return segments.isEmpty() ? docRefs.size() : segmentBases[0];
+  }
+
+  /**
+   * Return the information for a token in the index, or null if it is not indexed.
+   */
+  protected TokenInfo getTokenInfo(String token) {
+    int termId = TermDictionary.GLOBAL.lookup(token);
+    return termId < 0 ? null : getTokenInfo(termId);
+  }
+
+  /**
+   * Return the id of an indexed token, from rank 0 up to size(), in the
+   * order the tokens were first indexed.
+   */
+  public int termId(int rank) {
+    return termIds[rank];
+  }
+
+  /**
+   * Compute the IDF factor for every token in the index and the length
+   * of the document vector for every document referenced in the index.
+   * Also freezes the postings of every token in the index and computes
+   * the upper bound on its contribution to any document's score.
+   */
+  protected void computeIDFandDocumentLengths() {
+    double[] lengths = computeIDFandLengths(docRefs.size(), null, null);
+    // Set the length of every document reference
+    for (int docId = 0; docId < lengths.length; docId++) {
+      docRefs.get(docId).length = lengths[docId];
+    }
+    // Cached results no longer reflect the index
+    segmentsChanged();
+  }
+
+  /**
+   * Compute the length of every document vector, and freeze the postings
+   * and compute the bounds of every token, with the IDF of each token
+   * across a larger corpus that this index is a shard of, rather than
+   * across the documents it indexes.
+   */
+  protected void computeIDFandDocumentLengths(CorpusStatistics global) {
+    double[] lengths = computeIDFandLengths(docRefs.size(), global, null);
+    for (int docId = 0; docId < lengths.length; docId++) {
+      docRefs.get(docId).length = lengths[docId];
+    }
+    segmentsChanged();
+  }
+
+  /**
+   * Set whether this index keeps lazy statistics: the IDF of each token and
+   * the lengths of the document vectors are cached as they are now, and
+   * appended documents and merges use them rather than compute them again,
+   * until more than statisticsRefreshThreshold of the documents have been
+   * appended or deleted and the next merge into the main index computes
+   * them afresh.  Makes appending and merging cheaper, at the price of
+   * rankings that drift from those of an index built of the same documents
+   * at once until then.  Turning them off merges every segment into the
+   * main index and computes the statistics afresh at once.  Off by default.
+   */
+  public void setLazyStatistics(boolean lazy) {
+    synchronized (mergeLock) {
+      int count;
+      lock.writeLock().lock();
+      try {
+        if (lazy == (statistics != null))
+          return;
+        if (lazy) {
+          // Cache the IDF every token has now, counting the documents appended
+          // or deleted since those of the main index were computed
+          statistics = statistics(numMainDocs());
+          for (IndexSegment segment : segments) {
+            for (int rank = 0; rank < segment.size(); rank++) {
+              cachedIdf(segment.termId(rank));
+            }
+            statistics.changed(segment.numDocs());
+          }
+          if (deletions != null)
+            statistics.changed(deletions.cardinality());
+          segmentsChanged();
+          return;
+        }
+        statistics = null;
+        freezeLiveSegment();
+        count = segments.size();
+      }
+      finally {
+        lock.writeLock().unlock();
+      }
+      merge(-1, count, true, new MergeThrottle(0));
+    }
+  }
+
+  /**
+   * Return true if this index keeps lazy statistics.  See setLazyStatistics.
+   */
+  public boolean hasLazyStatistics() {
+    return statistics != null;
+  }
+
+  /**
+   * Set whether top-k retrieval uses MaxScore dynamic pruning.  The same as
+   * setting dynamicPruning, but indexes made of others, such as
+   * ShardedIndex, pass it on to them.
+   */
+  public void setDynamicPruning(boolean dynamicPruning) {
+    this.dynamicPruning = dynamicPruning;
+  }
+
+  /**
+   * Set whether top-k retrieval is impact-ordered.  The same as setting
+   * impactOrdered, but indexes made of others pass it on to them.
+   */
+  public void setImpactOrdered(boolean impactOrdered) {
+    this.impactOrdered = impactOrdered;
+  }
+
+  /**
+   * Set whether impact-ordered retrieval may stop early.  The same as
+   * setting approximateImpactOrdered, but indexes made of others pass it on
+   * to them.
+   */
+  public void setApproximateImpactOrdered(boolean approximateImpactOrdered) {
+    this.approximateImpactOrdered = approximateImpactOrdered;
+  }
+
+  /**
+   * Set whether scoring every document is split across threads.  The same
+   * as setting parallelScoring, but indexes made of others pass it on to
+   * them.
+   */
+  public void setParallelScoring(boolean parallelScoring) {
+    this.parallelScoring = parallelScoring;
+  }
+
+  /**
+   * Set the pool whose threads score the partitions of a query.  The same
+   * as setting scoringPool, but indexes made of others pass it on to them.
+   */
+  public void setScoringPool(ForkJoinPool scoringPool) {
+    this.scoringPool = scoringPool;
+  }
+
+  /**
+   * Return the statistics of a corpus of the given number of documents
+   * with the IDF of every token in the main index
+   */
+  protected CorpusStatistics statistics(int numDocs) {
+    CorpusStatistics statistics = new CorpusStatistics(numDocs);
+    for (int rank = 0; rank < numTerms; rank++) {
+      statistics.setIdf(termIds[rank], tokenInfos[termIds[rank]].idf);
+    }
+    return statistics;
+  }
+
+  /**
+   * Compute the IDF factor for every token in the index, freeze its
+   * postings and compute the upper bound on its contribution to any
+   * document's score, and return the length of the document vector of
+   * every document, without setting it in the document references.
+   * Tokens that occur in every document, so have an IDF of 0, stay indexed
+   * though queries leave them out, so that they count towards the IDF of
+   * the token once documents are appended, and are scored once that IDF is
+   * no longer 0.
+   *
+   * @param numDocs  The number of documents indexed.
+   * @param global   The IDF of every token across a corpus this index is a
+   *                 shard of, or null to compute it across this index.
+   * @param throttle Paces a merge, or null.
+   */
+  protected double[] computeIDFandLengths(int numDocs, CorpusStatistics global, MergeThrottle throttle) {
+    // Let N be the total number of documents indexed
+    double N = numDocs;
+    // Running sums of squared weights for each document, indexed by doc id
+    double[] lengths = new double[numDocs];
+    // Buffers for postings frozen already, as when merging segments
+    int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+    int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+    // Iterate through each of the tokens in the index
+    for (int rank = 0; rank < numTerms; rank++) {
+      int termId = termIds[rank];
+      TokenInfo tokenInfo = tokenInfos[termId];
+      // Get the total number of documents in which this token occurs
+      double numDocRefs = tokenInfo.numDocs;
+      // Calculate the IDF factor for this token
+      double idf = global == null ? Math.log(N / numDocRefs) : global.idf(termId);
+      //  System.out.println(token + " occurs in " + Math.round(numDocRefs) + " docs so IDF=" + idf);
+      tokenInfo.idf = idf;
+      // A token with an IDF of 0 adds nothing to the lengths
+      if (idf == 0.0)
+        continue;
+      if (throttle != null)
+        throttle.pace(tokenInfo.numDocs);
+      // In order to compute document vector lengths,  sum the
+      // square of the weights (IDF * occurrence count) across
+      // every token occurrence for each document.
+      for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+        int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+        for (int i = 0; i < blockSize; i++) {
+          lengths[docIds[i]] = lengths[docIds[i]] + Math.pow(idf * tfs[i], 2);
+        }
+      }
+    }
+    // At this point, every document length should be the sum of the squares of
+    // its token weights.  In order to calculate final lengths, just need to
+    // take the square-root of this sum.
+    for (int docId = 0; docId < lengths.length; docId++) {
+      lengths[docId] = Math.sqrt(lengths[docId]);
+    }
+    // Now that lengths are known, find the largest count and the largest
+    // normalized weight of each token, then compress its postings
+    for (int rank = 0; rank < numTerms; rank++) {
+      TokenInfo tokenInfo = tokenInfos[termIds[rank]];
+      double maxImpact = 0.0;
+      int maxCount = 0;
+      for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+        int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+        for (int i = 0; i < blockSize; i++) {
+          double impact = tokenInfo.idf * tfs[i] / lengths[docIds[i]];
+          if (impact > maxImpact)
+            maxImpact = impact;
+          if (tfs[i] > maxCount)
+            maxCount = tfs[i];
+        }
+      }
+      tokenInfo.maxImpact = maxImpact;
+      tokenInfo.maxCount = maxCount;
+      tokenInfo.freeze();
+      tokenInfo.clearImpactPostings();
+    }
+    return lengths;
+  }
+
+  /**
+   * Append named string documents to the index as they are read from an
+   * iterator, making each batch searchable as soon as it is indexed.  Their
+   * postings go to a live segment, frozen once it holds
+   * MAX_LIVE_SEGMENT_DOCS documents, until merges merge them into the main
+   * index, and the length of each one's vector is computed from the IDF of
+   * its tokens across every document indexed when it is appended.  Queries
+   * compute the IDF of their tokens across every document indexed, but the
+   * lengths of the other documents stay as they were until they are merged
+   * into the main index.  Safe to call while queries run on other threads.
+   *
+   * @param docs The documents to append, each with a name to retrieve it by.
+   */
+  public void addDocuments(Iterator<TextStringDocument> docs) {
+    while (docs.hasNext()) {
+      List<TextStringDocument> batch = new ArrayList<TextStringDocument>();
+      while (docs.hasNext() && batch.size() < MIN_DOCUMENTS_PER_INDEXING_THREAD) {
+        batch.add(docs.next());
+      }
+      // Tokenize outside the lock, so queries wait only for the postings to be added
+      appendPartialIndex(indexPartition(batch));
+    }
+  }
+
+  /**
+   * Append a named string document to the index, searchable at once.
+   * See addDocuments.
+   */
+  public void addDocument(TextStringDocument doc) {
+    addDocuments(Collections.singletonList(doc).iterator());
+  }
+
+  /**
+   * Delete the document with the given name from the index, as for a
+   * takedown.  It is no longer retrieved from the moment this returns, and
+   * its postings are left out by the next merge of its segment, or of the
+   * main index.  Until then it still counts towards the IDF of its tokens.
+   * Safe to call while queries run on other threads.
+   *
+   * @return False if no document of that name is indexed.
+   */
+  public boolean deleteDocument(String name) {
+    lock.writeLock().lock();
+    try {
+      if (!delete(name))
+        return false;
+      segmentsChanged();
+      return true;
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Replace the document with the same name as the given one, if any, with
+   * it.  Queries see either the old document or the new one, never both or
+   * neither.  See addDocuments and deleteDocument.
+   */
+  public void replaceDocument(TextStringDocument doc) {
+    InvertedIndex partial = indexPartition(Collections.singletonList(doc));
+    lock.writeLock().lock();
+    try {
+      delete(doc.name);
+      appendPartialIndex(partial);
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Mark the document with the given name deleted in its segment, or the
+   * main index, with the write lock held.
+   *
+   * @return False if no document of that name is indexed.
+   */
+  protected boolean delete(String name) {
+    if (docIdsByName == null) {
+      docIdsByName = new HashMap<String, Integer>();
+      for (int docId = 0; docId < docRefs.size(); docId++) {
+        if (!isDeleted(docId))
+          docIdsByName.put(docRefs.get(docId).name, docId);
+      }
+    }
+    Integer docId = docIdsByName.remove(name);
+    if (docId == null)
+      return false;
+    if (statistics != null)
+      statistics.changed(1);
+    int numMainDocs = numMainDocs();
+    if (docId < numMainDocs) {
+      if (deletions == null)
+        deletions = new BitSet(numMainDocs);
+      deletions.set(docId);
+      return true;
+    }
+    int s = segment(docId);
+    return segments.get(s).delete(docId - segmentBases[s]);
+  }
+
+  /**
+   * Return true if the document with the given id has been deleted.
+   * Called with a lock held.
+   */
+  protected boolean isDeleted(int docId) {
+    if (docId < numMainDocs())
+      return deletions != null && deletions.get(docId);
+    int s = segment(docId);
+    return segments.get(s).isDeleted(docId - segmentBases[s]);
+  }
+
+  /**
+   * Return the position in segments of the segment holding the document
+   * with the given id, which is not in the main index
+   */
+  protected int segment(int docId) {
+    int s = Arrays.binarySearch(segmentBases, 0, segments.size(), docId);
+    return s >= 0 ? s : -s - 2;
+  }
+
+  /**
+   * Add the documents of a partial index to the live segment, after those
+   * already indexed, and compute the lengths of their vectors.
+   */
+  protected void appendPartialIndex(InvertedIndex partial) {
+    lock.writeLock().lock();
+    try {
+      int docIdOffset = docRefs.size();
+      docRefs.addAll(partial.docRefs);
+      if (liveSegment == null) {
+        liveSegment = new IndexSegment();
+        segments.add(liveSegment);
+      }
+      liveSegment.addPartialIndex(partial);
+      // Sum the squares of the weights of each new document's tokens, with
+      // the IDF of each across every document now indexed
+      double N = docRefs.size();
+      double[] lengths = new double[partial.docRefs.size()];
+      for (int rank = 0; rank < partial.numTerms; rank++) {
+        int termId = partial.termIds[rank];
+        TokenInfo partialInfo = partial.tokenInfos[termId];
+        double idf = statistics == null ? Math.log(N / documentFrequency(termId)) : cachedIdf(termId);
+        for (int i = 0; i < partialInfo.numDocs; i++) {
+          int docId = partialInfo.docIds[i];
+          lengths[docId] = lengths[docId] + Math.pow(idf * partialInfo.tfs[i], 2);
+        }
+      }
+      for (int docId = 0; docId < lengths.length; docId++) {
+        DocumentReference docRef = partial.docRefs.get(docId);
+        docRef.length = Math.sqrt(lengths[docId]);
+        if (docIdsByName != null)
+          docIdsByName.put(docRef.name, docIdOffset + docId);
+      }
+      if (statistics != null)
+        statistics.changed(lengths.length);
+      if (liveSegment.numDocs() >= MAX_LIVE_SEGMENT_DOCS)
+        freezeLiveSegment();
+      segmentsChanged();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Return the cached IDF of a token of an index with lazy statistics,
+   * computing it across every document indexed the first time the token is
+   * appended.  Called with the write lock held.
+   */
+  protected double cachedIdf(int termId) {
+    double idf = statistics.idf(termId);
+    if (Double.isNaN(idf)) {
+      idf = Math.log((double) docRefs.size() / documentFrequency(termId));
+      statistics.setIdf(termId, idf);
+    }
+    return idf;
+  }
+
+  /**
+   * Freeze the live segment, if any, so the next append starts another.
+   * Called with the write lock held.
+   */
+  protected void freezeLiveSegment() {
+    if (liveSegment != null) {
+      liveSegment.freeze();
+      liveSegment = null;
+    }
+  }
+
+  /**
+   * Merge every segment into the main index now, leaving out deleted
+   * documents and computing the IDF of every token and the length of every
+   * document vector afresh, so that it ranks as an index built of the
+   * documents left all at once would, with lazy statistics too.  See merge.
+   */
+  public void mergeSegments() {
+    synchronized (mergeLock) {
+      int count;
+      lock.writeLock().lock();
+      try {
+        freezeLiveSegment();
+        if (segments.isEmpty() && deletions == null)
+          return;
+        count = segments.size();
+      }
+      finally {
+        lock.writeLock().unlock();
+      }
+      merge(-1, count, true, new MergeThrottle(0));
+    }
+  }
+
+  /**
+   * Freeze the live segment and make the merges chosen by the tiered merge
+   * policy, paced by mergePostingsPerSecond, as the background merging
+   * thread does.  See findMerge.
+   */
+  public void mergeByPolicy() {
+    synchronized (mergeLock) {
+      lock.writeLock().lock();
+      try {
+        freezeLiveSegment();
+      }
+      finally {
+        lock.writeLock().unlock();
+      }
+      int[] next;
+      while ((next = findMerge()) != null && !Thread.currentThread().isInterrupted()) {
+        merge(next[0], next[1], false, new MergeThrottle(mergePostingsPerSecond));
+      }
+    }
+  }
+
+  /**
+   * Choose the next merge of the tiered merge policy, among the frozen
+   * segments: all of them into the main index once they hold
+   * maxSegmentShare of its documents, once maxDeletedShare of its
+   * documents are deleted, or once lazy statistics are due to be computed
+   * afresh; otherwise the oldest run of segmentsPerTier
+   * adjacent segments of the same tier into one; otherwise a segment
+   * with maxDeletedShare of its documents deleted, alone.
+   *
+   * @return The position in segments of the first segment to merge and the
+   *         number of segments, with a first position of -1 to merge into
+   *         the main index, or null if no merge is needed.
+   */
+  protected int[] findMerge() {
+    lock.readLock().lock();
+    try {
+      int numFrozen = segments.size();
+      while (numFrozen > 0 && !segments.get(numFrozen - 1).isFrozen())
+        numFrozen--;
+      int numMainDocs = numMainDocs();
+      int numSegmentDocs = 0;
+      for (int s = 0; s < numFrozen; s++) {
+        numSegmentDocs = numSegmentDocs + segments.get(s).numDocs();
+      }
+      int numMainDeleted = deletions == null ? 0 : deletions.cardinality();
+      if (statistics != null && statistics.isStale(statisticsRefreshThreshold))
+        return new int[] {-1, numFrozen};
+      if ((numFrozen > 0 && numSegmentDocs >= maxSegmentShare * numMainDocs) ||
+          (numMainDeleted > 0 && numMainDeleted >= maxDeletedShare * numMainDocs))
+        return new int[] {-1, numFrozen};
+      int runStart = 0;
+      for (int s = 0; s < numFrozen; s++) {
+        if (tier(segments.get(s)) != tier(segments.get(runStart)))
+          runStart = s;
+        if (s - runStart + 1 == segmentsPerTier)
+          return new int[] {runStart, segmentsPerTier};
+      }
+      for (int s = 0; s < numFrozen; s++) {
+        IndexSegment segment = segments.get(s);
+        if (segment.numDeleted() > 0 && segment.numDeleted() >= maxDeletedShare * segment.numDocs())
+          return new int[] {s, 1};
+      }
+      return null;
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Return the tier of a segment for the merge policy
+   */
+  protected int tier(IndexSegment segment) {
+    int tier = 0;
+    for (long size = MAX_LIVE_SEGMENT_DOCS * (long) segmentsPerTier; size <= segment.numDocs(); size *= segmentsPerTier)
+      tier++;
+    return tier;
+  }
+
+  /**
+   * Merge adjacent frozen segments into one, or the first of them and the
+   * main index into a new main index, leaving out deleted documents.  The
+   * merged postings are built while queries, appends and deletes go on, and
+   * only put in place under the lock; documents deleted meanwhile are deleted
+   * again in the merged segment.  A merge into the main index computes the
+   * IDF of every token and the length of every merged document's vector
+   * afresh, but with lazy statistics only when asked to or once they are
+   * stale, and otherwise only the bounds of the tokens whose postings
+   * change; other merges keep the lengths they have.  Called holding mergeLock.
+   *
+   * @param first    The position in segments of the first to merge, or -1 to
+   *                 merge the main index with the first count segments.
+   * @param count    The number of segments to merge.
+   * @param refresh  Whether a merge into the main index computes lazy
+   *                 statistics afresh even if they are not stale.
+   * @param throttle Paces the merge.
+   */
+  protected void merge(int first, int count, boolean refresh, MergeThrottle throttle) {
+    boolean intoMain = first < 0;
+    TokenInfo[] mainInfos = tokenInfos;
+    CorpusStatistics cached = statistics;
+    double[] idfs = null;
+    List<IndexSegment> parts = new ArrayList<IndexSegment>();
+    List<BitSet> partDeletions = new ArrayList<BitSet>();
+    lock.writeLock().lock();
+    try {
+      // Take the main index as it is, and what is deleted now, as a segment
+      // that nothing changes until the merge is done
+      if (intoMain) {
+        InvertedIndex main = new InvertedIndex();
+        main.tokenInfos = tokenInfos;
+        main.termIds = termIds;
+        main.numTerms = numTerms;
+        parts.add(new IndexSegment(main, new ArrayList<DocumentReference>(docRefs.subList(0, numMainDocs())),
+            deletions == null ? null : (BitSet) deletions.clone()));
+        first = 0;
+      }
+      for (int s = first; s < first + count; s++) {
+        IndexSegment segment = segments.get(s);
+        parts.add(segment);
+      }
+      for (IndexSegment part : parts) {
+        partDeletions.add(part.deletions == null ? null : (BitSet) part.deletions.clone());
+      }
+      if (intoMain && cached != null) {
+        refresh = refresh || cached.isStale(statisticsRefreshThreshold);
+        idfs = cached.idfs();
+      }
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+    InvertedIndex merged = mergeParts(parts, partDeletions, throttle);
+    double[] lengths = null;
+    IndexSegment mergedSegment = null;
+    if (intoMain && (cached == null || refresh))
+      lengths = merged.computeIDFandLengths(merged.docRefs.size(), null, throttle);
+    else if (intoMain)
+      merged.computeBounds(mainInfos, idfs, throttle);
+    else {
+      mergedSegment = new IndexSegment(merged, merged.docRefs, null);
+      mergedSegment.freeze();
+    }
+    lock.writeLock().lock();
+    try {
+      // Delete again the documents deleted since the merge started
+      BitSet mergedDeletions = null;
+      int offset = 0;
+      for (int p = 0; p < parts.size(); p++) {
+        BitSet before = partDeletions.get(p);
+        BitSet now = intoMain && p == 0 ? deletions : parts.get(p).deletions;
+        int numDocs = parts.get(p).numDocs();
+        for (int docId = now == null ? -1 : now.nextSetBit(0); docId >= 0; docId = now.nextSetBit(docId + 1)) {
+          if (before == null || !before.get(docId)) {
+            if (mergedDeletions == null)
+              mergedDeletions = new BitSet(merged.docRefs.size());
+            int deletedBefore = before == null ? 0 : before.get(0, docId).cardinality();
+            mergedDeletions.set(offset + docId - deletedBefore);
+          }
+        }
+        offset = offset + numDocs - (before == null ? 0 : before.cardinality());
+      }
+      List<DocumentReference> mainDocRefs = docRefs.subList(0, numMainDocs());
+      List<DocumentReference> newDocRefs = new ArrayList<DocumentReference>(docRefs.size());
+      if (intoMain) {
+        tokenInfos = merged.tokenInfos;
+        termIds = merged.termIds;
+        numTerms = merged.numTerms;
+        if (lengths != null) {
+          for (int docId = 0; docId < lengths.length; docId++) {
+            merged.docRefs.get(docId).length = lengths[docId];
+          }
+        }
+        deletions = mergedDeletions;
+        newDocRefs.addAll(merged.docRefs);
+        segments.subList(0, count).clear();
+        if (lengths != null && cached != null)
+          statistics = refreshedStatistics(merged);
+      }
+      else {
+        newDocRefs.addAll(mainDocRefs);
+        mergedSegment.deletions = mergedDeletions;
+        List<IndexSegment> run = segments.subList(first, first + count);
+        run.clear();
+        if (mergedSegment.numDocs() > 0)
+          run.add(mergedSegment);
+      }
+      for (IndexSegment segment : segments) {
+        newDocRefs.addAll(segment.docRefs);
+      }
+      docRefs = newDocRefs;
+      // Documents after those left out have new ids
+      docIdsByName = null;
+      segmentsChanged();
+    }
+    finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Give the tokens of a merged main index of an index with lazy statistics
+   * their cached IDF, and compute the bounds and freeze the postings of
+   * those not shared unchanged with the old main index, from the lengths
+   * the documents have.
+   *
+   * @param mainInfos The TokenInfo of each token in the old main index.
+   * @param idfs      The cached IDF of each token, indexed by token id.
+   * @param throttle  Paces the merge.
+   */
+  protected void computeBounds(TokenInfo[] mainInfos, double[] idfs, MergeThrottle throttle) {
+    int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+    int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+    for (int rank = 0; rank < numTerms; rank++) {
+      int termId = termIds[rank];
+      TokenInfo tokenInfo = tokenInfos[termId];
+      TokenInfo mainInfo = termId < mainInfos.length ? mainInfos[termId] : null;
+      // Postings shared with the old main index keep its IDF and bounds
+      if (mainInfo != null && tokenInfo.isFrozen() && tokenInfo.postings == mainInfo.postings)
+        continue;
+      tokenInfo.idf = idfs[termId];
+      double maxImpact = 0.0;
+      int maxCount = 0;
+      for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+        int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+        for (int i = 0; i < blockSize; i++) {
+          double impact = tokenInfo.idf * tfs[i] / docRefs.get(docIds[i]).length;
+          if (impact > maxImpact)
+            maxImpact = impact;
+          if (tfs[i] > maxCount)
+            maxCount = tfs[i];
+        }
+      }
+      tokenInfo.maxImpact = maxImpact;
+      tokenInfo.maxCount = maxCount;
+      tokenInfo.freeze();
+      throttle.pace(tokenInfo.numDocs);
+    }
+  }
+
+  /**
+   * Return the lazy statistics computed by a merge into the main index,
+   * counting the documents appended to segments or deleted since, and
+   * keeping the cached IDF of the tokens only those segments have.  Called
+   * with the write lock held once the merge is in place.
+   */
+  protected CorpusStatistics refreshedStatistics(InvertedIndex merged) {
+    CorpusStatistics refreshed = merged.statistics(merged.docRefs.size());
+    for (IndexSegment segment : segments) {
+      for (int rank = 0; rank < segment.size(); rank++) {
+        int termId = segment.termId(rank);
+        if (Double.isNaN(refreshed.idf(termId)))
+          refreshed.setIdf(termId, statistics.idf(termId));
+      }
+      refreshed.changed(segment.numDocs());
+    }
+    if (deletions != null)
+      refreshed.changed(deletions.cardinality());
+    return refreshed;
   }
 
-
   /**
-   * Index the documents in the List of Examples for text categorization.
+   * Copy the postings of the documents not deleted of some parts, in order,
+   * into a new partial index numbering them from 0, whose docRefs are those
+   * documents.  Postings that need no renumbering and are frozen already
+   * are shared, not copied.
+   *
+   * @param parts         The parts to merge, in doc id order.
+   * @param partDeletions The ids within each part of its deleted documents, or null.
+   * @param throttle      Paces the copying.
    */
-  public void indexDocuments(List<Example> examples) {
-    if (!tokenHash.isEmpty() || !docRefs.isEmpty()) {
-      // Currently can only index one set of documents when an index is created
-      throw new IllegalStateException("Cannot indexDocuments more than once in the same InvertedIndex");
+  protected static InvertedIndex mergeParts(List<IndexSegment> parts, List<BitSet> partDeletions,
+                                            MergeThrottle throttle) {
+    InvertedIndex merged = new InvertedIndex();
+    // The new id of the first document of each part, or of each document
+    // of a part with deleted documents
+    int[] offsets = new int[parts.size()];
+    int[][] newIds = new int[parts.size()][];
+    for (int p = 0; p < parts.size(); p++) {
+      IndexSegment part = parts.get(p);
+      BitSet deleted = partDeletions.get(p);
+      offsets[p] = merged.docRefs.size();
+      if (deleted != null)
+        newIds[p] = new int[part.numDocs()];
+      for (int docId = 0; docId < part.numDocs(); docId++) {
+        if (deleted == null || !deleted.get(docId)) {
+          if (deleted != null)
+            newIds[p][docId] = merged.docRefs.size();
+          merged.docRefs.add(part.docRefs.get(docId));
+        }
+      }
     }
-    // Loop, processing each of the examples
-    for (Example example : examples) {
-      FileDocument doc = example.getDocument();
-      // Create a document vector for this document
-      HashMapVector vector = example.getHashMapVector();
-      indexDocument(doc, vector);
+    int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+    int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+    for (int p = 0; p < parts.size(); p++) {
+      IndexSegment part = parts.get(p);
+      BitSet deleted = partDeletions.get(p);
+      for (int rank = 0; rank < part.size(); rank++) {
+        int termId = part.termId(rank);
+        TokenInfo partInfo = part.getTokenInfo(termId);
+        TokenInfo tokenInfo = merged.tokenInfos.length > termId ? merged.tokenInfos[termId] : null;
+        if (tokenInfo == null && offsets[p] == 0 && deleted == null && partInfo.isFrozen()) {
+          merged.putTokenInfo(termId, new TokenInfo(partInfo));
+          continue;
+        }
+        if (tokenInfo == null) {
+          tokenInfo = new TokenInfo();
+          merged.putTokenInfo(termId, tokenInfo);
+        }
+        else if (tokenInfo.isFrozen()) {
+          // Shared with the first part, so copy it before adding to it
+          TokenInfo copy = new TokenInfo();
+          copy.addOccurrences(tokenInfo, 0);
+          merged.tokenInfos[termId] = copy;
+          tokenInfo = copy;
+        }
+        if (deleted == null)
+          tokenInfo.addOccurrences(partInfo, offsets[p]);
+        else {
+          for (int block = 0; block < partInfo.numBlocks(); block++) {
+            int blockSize = partInfo.decodeBlock(block, docIds, tfs);
+            for (int i = 0; i < blockSize; i++) {
+              if (!deleted.get(docIds[i]))
+                tokenInfo.addOccurrence(newIds[p][docIds[i]], tfs[i]);
+            }
+          }
+        }
+        throttle.pace(partInfo.numDocs);
+      }
     }
-    // Now that all documents have been processed, we can calculate the IDF weights for
-    // all tokens and the resulting lengths of all weighted document vectors.
-    computeIDFandDocumentLengths();
-    System.out.println("Indexed " + docRefs.size() + " documents with " + size() + " unique terms.");
+    // Drop the tokens that occurred only in deleted documents
+    int numKept = 0;
+    for (int rank = 0; rank < merged.numTerms; rank++) {
+      int termId = merged.termIds[rank];
+      if (merged.tokenInfos[termId].numDocs == 0)
+        merged.tokenInfos[termId] = null;
+      else
+        merged.termIds[numKept++] = termId;
+    }
+    merged.numTerms = numKept;
+    return merged;
   }
 
   /**
-   * Index the given document using its corresponding vector
+   * Make the merges chosen by the tiered merge policy on a background
+   * thread, every period milliseconds, until cancelMerges is called.  The
+   * thread runs at the lowest priority and its merges are paced by
+   * mergePostingsPerSecond, so queries keep the processor; it does not keep
+   * the JVM from exiting.
    */
-  protected void indexDocument(FileDocument doc, HashMapVector vector) {
-    // Create a reference to this document
-    DocumentReference docRef = new DocumentReference(doc);
-    // Add this document to the list of documents indexed
-    docRefs.add(docRef);
-    // Iterate through each of the tokens in the document
-    for (Map.Entry<String, Weight> entry : vector.entrySet()) {
-      // An entry in the HashMap maps a token to a Weight
-      String token = entry.getKey();
-      // The count for the token is in the value of the Weight
-      int count = (int) entry.getValue().getValue();
-      // Add an occurrence of this token to the inverted index pointing to this document
-      indexToken(token, count, docRef);
-    }
+  public synchronized void scheduleMerges(long period) {
+    cancelMerges();
+    merger = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "InvertedIndex merger");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    });
+    merger.scheduleWithFixedDelay(new Runnable() {
+      public void run() {
+        try {
+          mergeByPolicy();
+        }
+        catch (RuntimeException e) {
+          // Keep merging later rather than leave the segments to grow
+          System.err.println("Could not merge appended documents: " + e);
+        }
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
   }
 
   /**
-   * Add a token occurrence to the index.
-   *
-   * @param token  The token to index.
-   * @param count  The number of times it occurs in the document.
-   * @param docRef A reference to the Document it occurs in.
+   * Stop merging in the background, letting a merge under way finish
    */
-  protected void indexToken(String token, int count, DocumentReference docRef) {
-    // Find this token in the index
-    TokenInfo tokenInfo = tokenHash.get(token);
-    if (tokenInfo == null) {
-      // If this is a new token, create info for it to put in the hashtable
-      tokenInfo = new TokenInfo();
-      tokenHash.put(token, tokenInfo);
+  public synchronized void cancelMerges() {
+    if (merger != null) {
+      merger.shutdown();
+      merger = null;
     }
-    // Add a new occurrence for this token to its info
-    tokenInfo.occList.add(new TokenOccurrence(docRef, count));
   }
 
   /**
-   * Compute the IDF factor for every token in the index and the length
-   * of the document vector for every document referenced in the index.
+   * Return the number of segments of appended documents not yet merged
+   * into the main index
    */
-  protected void computeIDFandDocumentLengths() {
-    // Let N be the total number of documents indexed
-    double N = docRefs.size();
-    // Iterate through each of the tokens in the index
-    Iterator<Map.Entry<String, TokenInfo>> mapEntries = tokenHash.entrySet().iterator();
-    while (mapEntries.hasNext()) {
-      // Get the token and the tokenInfo for each entry in the HashMap
-      Map.Entry<String, TokenInfo> entry = mapEntries.next();
-
-      TokenInfo tokenInfo = entry.getValue();
-      // Get the total number of documents in which this token occurs
-      double numDocRefs = tokenInfo.occList.size();
-      // Calculate the IDF factor for this token
-      double idf = Math.log(N / numDocRefs);
-      //  System.out.println(token + " occurs in " + Math.round(numDocRefs) + " docs so IDF=" + idf);
-      if (idf == 0.0)
-        // If IDF is 0, then just remove this inconsequential token from the index
-        mapEntries.remove();
-      else {
-        tokenInfo.idf = idf;
-        // In order to compute document vector lengths,  sum the
-        // square of the weights (IDF * occurrence count) across
-        // every token occurrence for each document and store sum in docRef.length.
-        for (TokenOccurrence occ : tokenInfo.occList) {
-          occ.docRef.length = occ.docRef.length + Math.pow(idf * occ.count, 2);
-        }
-      }
+  public int numSegments() {
+    lock.readLock().lock();
+    try {
+      return segments.size();
     }
-    // At this point, every document length should be the sum of the squares of
-    // its token weights.  In order to calculate final lengths, just need to
-    // set the length of every document reference to the square-root of this sum.
-    for (DocumentReference docRef : docRefs) {
-      docRef.length = Math.sqrt(docRef.length);
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Note where each segment starts, and discard the postings made across
+   * the segments and the cached results, once documents are appended,
+   * deleted or merged.  With lazy statistics, postings are always read
+   * through getSegmentedTokenInfo, which leaves out tokens whose IDF is 0.
+   * Called with the write lock held.
+   */
+  protected void segmentsChanged() {
+    segmentBases = new int[segments.size()];
+    int base = docRefs.size();
+    for (int s = segments.size() - 1; s >= 0; s--) {
+      base = base - segments.get(s).numDocs();
+      segmentBases[s] = base;
     }
+    segmentedTokenInfos = segments.isEmpty() && deletions == null && statistics == null ? null :
+        new AtomicReferenceArray<TokenInfo>(TermDictionary.GLOBAL.size());
+    if (queryCache != null)
+      queryCache.invalidate();
   }
 
   /**
@@ -222,16 +1574,25 @@ public class InvertedIndex {
    */
   public void print() {
     // Iterate through each token in the index
-    for (Map.Entry<String, TokenInfo> entry : tokenHash.entrySet()) {
-      String token = entry.getKey();
-      // Print the token and its IDF factor
-      System.out.println(token + " (IDF=" + entry.getValue().idf + ") occurs in:");
-      // For each document referenced, print its name, occurrence count for this token, and
-      // document vector length (|D|).
-      for (TokenOccurrence occ : entry.getValue().occList) {
-        System.out.println("   " + occ.docRef.file.getName() + " " + occ.count +
-            " times; |D|=" + occ.docRef.length);
-      }
+    for (int rank = 0; rank < numTerms; rank++) {
+      int termId = termIds[rank];
+      if (tokenInfos[termId].idf != 0.0)
+        printTokenInfo(TermDictionary.GLOBAL.term(termId), tokenInfos[termId]);
+    }
+  }
+
+  /**
+   * Print a token, its IDF factor and the documents it occurs in.
+   */
+  protected void printTokenInfo(String token, TokenInfo tokenInfo) {
+    System.out.println(token + " (IDF=" + tokenInfo.idf + ") occurs in:");
+    // For each document referenced, print its name, occurrence count for this token, and
+    // document vector length (|D|).
+    PostingsCursor postings = tokenInfo.cursor();
+    for (int docId = postings.docId(); docId != PostingsCursor.NO_MORE_DOCS; docId = postings.next()) {
+      DocumentReference docRef = docRefs.get(docId);
+      System.out.println("   " + docRef.name + " " + postings.tf() +
+          " times; |D|=" + docRef.length);
     }
   }
 
@@ -241,8 +1602,8 @@ public class InvertedIndex {
   public void printTokens(int number) {
 	    // Iterate through each token in the index
 	    int counter = 0;
-	    for (Map.Entry<String, TokenInfo> entry : tokenHash.entrySet()) {
-	    		System.out.println(entry.getKey());
+	    for (int rank = 0; rank < numTerms; rank++) {
+	    		System.out.println(TermDictionary.GLOBAL.term(termIds[rank]));
 	    		counter++;
 	    		if(counter==number) {break;}
 	    }
@@ -252,15 +1613,83 @@ public class InvertedIndex {
    * Return the number of tokens indexed.
    */
   public int size() {
-    return tokenHash.size();
+    return numTerms;
   }
 
   /**
    * Clear all documents from the inverted index
    */
   public void clear() {
-    docRefs.clear();
-    tokenHash.clear();
+    synchronized (mergeLock) {
+      lock.writeLock().lock();
+      try {
+        docRefs.clear();
+        Arrays.fill(tokenInfos, null);
+        numTerms = 0;
+        segments.clear();
+        liveSegment = null;
+        deletions = null;
+        docIdsByName = null;
+        if (statistics != null)
+          statistics = new CorpusStatistics(0);
+        segmentsChanged();
+        accumulators.remove();
+      }
+      finally {
+        lock.writeLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * Save this index to a file in the versioned binary format of IndexFile,
+   * which records the indexed documents with their vector lengths and every
+   * token with its IDF, score bounds and postings.  Any segments of appended
+   * documents are merged into the main index first.  Queries go on while
+   * it merges and writes; appends wait only while it writes.
+   */
+  public void save(File file) throws IOException {
+    synchronized (mergeLock) {
+      while (true) {
+        mergeSegments();
+        lock.readLock().lock();
+        try {
+          // Documents appended or deleted since the merge must be merged too
+          if (segments.isEmpty() && deletions == null) {
+            IndexFile.write(this, file);
+            return;
+          }
+        }
+        finally {
+          lock.readLock().unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * Load an index saved to a file into memory.
+   *
+   * @param file     The index file.
+   * @param feedback Whether relevance feedback should be used.
+   * @throws IOException If the file cannot be read or was written in another format version.
+   */
+  public static InvertedIndex load(File file, boolean feedback) throws IOException {
+    IndexFile indexFile = new IndexFile(file);
+    InvertedIndex index = new InvertedIndex();
+    index.feedback = feedback;
+    index.docType = indexFile.docType;
+    index.stem = indexFile.stem;
+    index.dirFile = indexFile.dirFile;
+    for (int docId = 0; docId < indexFile.numDocs; docId++) {
+      index.docRefs.add(indexFile.docReference(docId));
+    }
+    for (int rank = 0; rank < indexFile.numTokens; rank++) {
+      index.putTokenInfo(TermDictionary.GLOBAL.id(indexFile.token(rank)), indexFile.readTokenInfo(rank));
+    }
+    System.out.println("Loaded index of " + index.docRefs.size() + " documents with " +
+        index.size() + " unique terms from " + file);
+    return index;
   }
 
   /**
@@ -274,51 +1703,593 @@ public class InvertedIndex {
    * Perform ranked retrieval on this input query Document.
    */
   public Retrieval[] retrieve(Document doc) {
-    return retrieve(doc.hashMapVector());
+    return retrieve(doc.queryVector());
   }
 
   /**
    * Perform ranked retrieval on this input query Document vector.
    */
   public Retrieval[] retrieve(HashMapVector vector) {
-    // Create a hashtable to store the retrieved documents.  Keys
-    // are docRefs and values are DoubleValues which indicate the
-    // partial score accumulated for this document so far.
-    // As each token in the query is processed, each document
-    // it indexes is added to this hashtable and its retrieval
-    // score (similarity to the query) is appropriately updated.
-    Map<DocumentReference, DoubleValue> retrievalHash =
-        new HashMap<DocumentReference, DoubleValue>();
+    return retrieve(vector, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Perform ranked retrieval on this input query Document vector, returning
+   * only the k best ranked Retrievals.
+   */
+  public Retrieval[] retrieve(HashMapVector vector, int k) {
+    // Keep appends and merges out until the results, and any cached, are final
+    lock.readLock().lock();
+    try {
+      QueryCache cache = queryCache;
+      if (cache == null)
+        return retrieveUncached(vector, k);
+      // Results cached in one mode are not served in another
+      String key = QueryCache.key(vector, k, retrievalMode());
+      Retrieval[] retrievals = cache.get(key);
+      if (retrievals == null) {
+        retrievals = retrieveUncached(vector, k);
+        cache.put(key, retrievals.clone());
+        return retrievals;
+      }
+      // Copy, so that callers cannot reorder the cached array
+      return retrievals.clone();
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Return the settings that choose how retrieve ranks a query, as the bits
+   * of a number
+   */
+  protected int retrievalMode() {
+    return (dynamicPruning ? 1 : 0) | (impactOrdered ? 2 : 0) | (approximateImpactOrdered ? 4 : 0) |
+        (parallelScoring ? 8 : 0);
+  }
+
+  /**
+   * Perform ranked retrieval on this input query Document vector, returning
+   * only the k best ranked Retrievals, without consulting the query cache.
+   */
+  protected Retrieval[] retrieveUncached(HashMapVector vector, int k) {
+    if (impactOrdered && k < docRefs.size()) {
+      Retrieval[] retrievals = retrieveImpactOrdered(vector, k);
+      if (retrievals != null)
+        return retrievals;
+    }
+    if (dynamicPruning && k < docRefs.size()) {
+      Retrieval[] retrievals = retrieveMaxScore(vector, k);
+      if (retrievals != null)
+        return retrievals;
+    }
+    return scoreExhaustive(vector, k);
+  }
+
+  /**
+   * Perform ranked retrieval on this input query Document vector by scoring
+   * every document indexed under its tokens, returning the k best ranked.
+   */
+  public Retrieval[] retrieveExhaustive(HashMapVector vector, int k) {
+    lock.readLock().lock();
+    try {
+      return scoreExhaustive(vector, k);
+    }
+    finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Score every document indexed under the tokens of this query vector and
+   * return the k best ranked, with the lock held.
+   */
+  protected Retrieval[] scoreExhaustive(HashMapVector vector, int k) {
+    if (parallelScoring) {
+      Retrieval[] retrievals = scoreParallel(vector, k);
+      if (retrievals != null)
+        return retrievals;
+    }
+    // Get the accumulator that stores the partial score of each retrieved
+    // document so far, indexed by doc id.  As each token in the query is
+    // processed, each document it indexes is marked as retrieved and its
+    // retrieval score (similarity to the query) is appropriately updated.
+    ScoreAccumulator scores = getAccumulator();
     // Initialize a variable to store the length of the query vector
     double queryLength = 0.0;
     // Iterate through each token in the query input Document
-    for (Map.Entry<String, Weight> entry : vector.entrySet()) {
-      String token = entry.getKey();
-      double count = entry.getValue().getValue();
+    for (int i = 0; i < vector.size(); i++) {
+      int termId = vector.termIdAt(i);
+      double count = vector.weightAt(i);
       // Determine the score added to the similarity of each document
       // indexed under this token and update the length of the
       // query vector with the square of the weight for this token.
-      queryLength = queryLength + incorporateToken(token, count, retrievalHash);
+      queryLength = queryLength + incorporateToken(termId, count, scores);
     }
     // Finalize the length of the query vector by taking the square-root of the
     // final sum of squares of its token weights.
     queryLength = Math.sqrt(queryLength);
-    // Make an array to store the final ranked Retrievals.
-    Retrieval[] retrievals = new Retrieval[retrievalHash.size()];
-    // Iterate through each of the retrieved documents stored in
-    // the final retrievalHash.
-    int retrievalCount = 0;
-    for (Map.Entry<DocumentReference, DoubleValue> entry : retrievalHash.entrySet()) {
-      DocumentReference docRef = entry.getKey();
-      double score = entry.getValue().value;
-      retrievals[retrievalCount++] = getRetrieval(queryLength, docRef, score);
-    }
-    // Sort the retrievals to produce a final ranked list using the
-    // Comparator for retrievals that produces a best to worst ordering.
-    Arrays.sort(retrievals);
+    // Make a heap to select the k best retrieved documents
+    RetrievalHeap heap = new RetrievalHeap(Math.min(k, scores.numTouched()));
+    // Offer each of the retrieved documents in the accumulator to the heap
+    for (int i = 0; i < scores.numTouched(); i++) {
+      int docId = scores.touchedDoc(i);
+      heap.offer(docId, normalizeScore(queryLength, docRefs.get(docId), scores.score(docId)));
+    }
+    // Clear the accumulator for the next query
+    scores.reset();
+    // Produce a final ranked list of Retrievals from best to worst
+    return heap.toRetrievals(docRefs);
+  }
+
+  /**
+   * Score every document indexed under the tokens of this query vector as
+   * scoreExhaustive does, but with the doc ids split into a partition per
+   * thread of scoringPool, all scored at once, and return the k best ranked
+   * of them all.
+   *
+   * @return The ranked Retrievals, or null if the tokens of the query index
+   *         too few documents to be worth splitting.
+   */
+  protected Retrieval[] scoreParallel(HashMapVector vector, int k) {
+    TokenInfo[] queryInfos = new TokenInfo[vector.size()];
+    double[] weights = new double[vector.size()];
+    double queryLength = 0.0;
+    long numPostings = 0;
+    for (int i = 0; i < vector.size(); i++) {
+      TokenInfo tokenInfo = getTokenInfo(vector.termIdAt(i));
+      // A token not in the index adds nothing, as in incorporateToken
+      if (tokenInfo != null) {
+        queryInfos[i] = tokenInfo;
+        weights[i] = tokenInfo.idf * vector.weightAt(i);
+        queryLength = queryLength + weights[i] * weights[i];
+        numPostings = numPostings + tokenInfo.numDocs;
+      }
+    }
+    int numPartitions = (int) Math.min(scoringPool.getParallelism(),
+        numPostings / MIN_POSTINGS_PER_SCORING_PARTITION);
+    if (numPartitions < 2)
+      return null;
+    queryLength = Math.sqrt(queryLength);
+    final List<ScoringPartition> partitions = new ArrayList<ScoringPartition>();
+    for (int p = 0; p < numPartitions; p++) {
+      int first = (int) ((long) docRefs.size() * p / numPartitions);
+      int end = (int) ((long) docRefs.size() * (p + 1) / numPartitions);
+      partitions.add(new ScoringPartition(queryInfos, weights, queryLength, k, first, end));
+    }
+    scoringPool.invoke(new RecursiveAction() {
+      protected void compute() {
+        invokeAll(partitions);
+      }
+    });
+    int numRetrieved = 0;
+    for (ScoringPartition partition : partitions) {
+      numRetrieved = numRetrieved + partition.join().size();
+    }
+    // The heap breaks ties by doc id, so the order partitions are offered in does not matter
+    RetrievalHeap heap = new RetrievalHeap(Math.min(k, numRetrieved));
+    for (ScoringPartition partition : partitions) {
+      RetrievalHeap best = partition.join();
+      for (int i = 0; i < best.size(); i++) {
+        heap.offer(best.docIds[i], best.scores[i]);
+      }
+    }
+    return heap.toRetrievals(docRefs);
+  }
+
+  /**
+   * The scoring of every token of a query, term at a time, for the
+   * documents in a range of doc ids, into the accumulator of the thread
+   * that scores it.  Yields the best k of those documents.
+   */
+  @SuppressWarnings("serial")
+  protected class ScoringPartition extends RecursiveTask<RetrievalHeap> {
+    /**
+     * The postings of each token of the query, or null if it is not indexed
+     */
+    protected final TokenInfo[] queryInfos;
+
+    /**
+     * The weight of each token in the query
+     */
+    protected final double[] weights;
+
+    protected final double queryLength;
+    protected final int k;
+
+    /**
+     * The range of doc ids scored, from first up to but not including end
+     */
+    protected final int first;
+    protected final int end;
+
+    protected ScoringPartition(TokenInfo[] queryInfos, double[] weights, double queryLength, int k,
+                               int first, int end) {
+      this.queryInfos = queryInfos;
+      this.weights = weights;
+      this.queryLength = queryLength;
+      this.k = k;
+      this.first = first;
+      this.end = end;
+    }
+
+    protected RetrievalHeap compute() {
+      ScoreAccumulator scores = getAccumulator();
+      int[] docIds = scores.docIdBuffer;
+      int[] tfs = scores.tfBuffer;
+      for (int t = 0; t < queryInfos.length; t++) {
+        TokenInfo tokenInfo = queryInfos[t];
+        if (tokenInfo == null)
+          continue;
+        // Decode only the blocks that overlap the range, the first found by its last doc id
+        int low = 0;
+        int high = tokenInfo.numBlocks();
+        while (low < high) {
+          int middle = (low + high) >>> 1;
+          if (tokenInfo.blockLastDocId(middle) < first)
+            low = middle + 1;
+          else
+            high = middle;
+        }
+        for (int block = low; block < tokenInfo.numBlocks(); block++) {
+          int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+          for (int i = 0; i < blockSize; i++) {
+            if (docIds[i] >= first && docIds[i] < end)
+              scores.add(docIds[i], weights[t] * tokenInfo.idf * tfs[i]);
+          }
+          if (tokenInfo.blockLastDocId(block) >= end - 1)
+            break;
+        }
+      }
+      RetrievalHeap heap = new RetrievalHeap(Math.min(k, scores.numTouched()));
+      for (int i = 0; i < scores.numTouched(); i++) {
+        int docId = scores.touchedDoc(i);
+        heap.offer(docId, normalizeScore(queryLength, docRefs.get(docId), scores.score(docId)));
+      }
+      // Clear the accumulator for the next query on this thread
+      scores.reset();
+      return heap;
+    }
+  }
+
+  /**
+   * Perform document-at-a-time ranked retrieval on this input query Document
+   * vector using the MaxScore algorithm, returning the k best ranked.
+   * Query tokens are ordered by the bound on their contribution to a score;
+   * once the k'th best score exceeds the sum of the bounds of the weakest
+   * tokens, documents that contain only those tokens are never visited, and
+   * candidates are abandoned as soon as their bound falls below the k'th best.
+   * Each surviving candidate is scored exactly as in retrieveExhaustive so the
+   * ranking is identical.
+   *
+   * @return The ranked Retrievals, or null if the query has a token with a
+   *         non-positive weight, which the bounds do not account for, or if
+   *         its tokens index too few documents for pruning to pay off.
+   */
+  protected Retrieval[] retrieveMaxScore(HashMapVector vector, int k) {
+    int numTerms = 0;
+    TokenInfo[] tokenInfos = new TokenInfo[vector.size()];
+    double[] weights = new double[vector.size()];
+    double queryLength = 0.0;
+    long numPostings = 0;
+    // Gather the indexed query tokens and their weights in the order that
+    // retrieveExhaustive incorporates them.
+    for (int i = 0; i < vector.size(); i++) {
+      TokenInfo tokenInfo = getTokenInfo(vector.termIdAt(i));
+      if (tokenInfo == null)
+        continue;
+      double weight = tokenInfo.idf * vector.weightAt(i);
+      if (weight <= 0.0)
+        return null;
+      tokenInfos[numTerms] = tokenInfo;
+      weights[numTerms] = weight;
+      queryLength = queryLength + weight * weight;
+      numPostings = numPostings + tokenInfo.numDocs;
+      numTerms++;
+    }
+    if (numPostings < PRUNING_MIN_POSTINGS_PER_RETRIEVAL * (long) k)
+      return null;
+    queryLength = Math.sqrt(queryLength);
+    // Order the tokens by increasing bound on their contribution to a final score
+    Integer[] order = new Integer[numTerms];
+    final double[] bounds = new double[numTerms];
+    for (int i = 0; i < numTerms; i++) {
+      order[i] = i;
+      bounds[i] = weights[i] * tokenInfos[i].maxImpact / queryLength;
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer i, Integer j) {
+        return Double.compare(bounds[i], bounds[j]);
+      }
+    });
+    // cumulativeBounds[j] is the sum of the bounds of the j weakest tokens, and
+    // cumulativeMaxWeights[j] the sum of their largest weights in any document,
+    // which bounds their contribution to a document of known length
+    double[] cumulativeBounds = new double[numTerms + 1];
+    double[] cumulativeMaxWeights = new double[numTerms + 1];
+    PostingsCursor[] cursors = new PostingsCursor[numTerms];
+    for (int j = 0; j < numTerms; j++) {
+      TokenInfo tokenInfo = tokenInfos[order[j]];
+      cumulativeBounds[j + 1] = cumulativeBounds[j] + bounds[order[j]];
+      cumulativeMaxWeights[j + 1] = cumulativeMaxWeights[j] +
+          weights[order[j]] * tokenInfo.idf * tokenInfo.maxCount;
+      cursors[j] = tokenInfo.cursor();
+    }
+    // The count of each token in the current candidate, indexed by query order
+    int[] counts = new int[numTerms];
+    RetrievalHeap heap = new RetrievalHeap(k);
+    // Tokens order[0..firstEssential-1] cannot by themselves get a document
+    // into the heap, so candidates come only from the remaining essential tokens
+    int firstEssential = 0;
+    while (firstEssential < numTerms) {
+      // Find the next candidate, the smallest doc id among the essential tokens
+      int docId = PostingsCursor.NO_MORE_DOCS;
+      for (int j = firstEssential; j < numTerms; j++) {
+        docId = Math.min(docId, cursors[j].docId());
+      }
+      if (docId == PostingsCursor.NO_MORE_DOCS)
+        break;
+      DocumentReference docRef = docRefs.get(docId);
+      double norm = queryLength * docRef.length;
+      double threshold = heap.minScore();
+      // Score the candidate on the essential tokens
+      double score = 0.0;
+      for (int j = firstEssential; j < numTerms; j++) {
+        if (cursors[j].docId() == docId) {
+          int t = order[j];
+          counts[t] = cursors[j].tf();
+          score = score + weights[t] * tokenInfos[t].idf * counts[t] / norm;
+          cursors[j].next();
+        }
+      }
+      // Probe the non-essential tokens, strongest first, while the candidate
+      // could still beat the k'th best document
+      boolean pruned = false;
+      for (int j = firstEssential - 1; j >= 0; j--) {
+        double bound = Math.min(cumulativeBounds[j + 1], cumulativeMaxWeights[j + 1] / norm);
+        if ((score + bound) * (1.0 + PRUNING_SLACK) < threshold) {
+          pruned = true;
+          break;
+        }
+        if (cursors[j].advance(docId) == docId) {
+          int t = order[j];
+          counts[t] = cursors[j].tf();
+          score = score + weights[t] * tokenInfos[t].idf * counts[t] / norm;
+        }
+      }
+      if (!pruned && score * (1.0 + PRUNING_SLACK) >= threshold) {
+        // Compute the exact score by summing in the same order as retrieveExhaustive
+        double exactScore = 0.0;
+        for (int t = 0; t < numTerms; t++) {
+          if (counts[t] != 0)
+            exactScore = exactScore + weights[t] * tokenInfos[t].idf * counts[t];
+        }
+        if (heap.offer(docId, normalizeScore(queryLength, docRef, exactScore))) {
+          // A better k'th best score may let more tokens become non-essential
+          threshold = heap.minScore();
+          while (firstEssential < numTerms &&
+              cumulativeBounds[firstEssential + 1] * (1.0 + PRUNING_SLACK) < threshold)
+            firstEssential++;
+        }
+      }
+      Arrays.fill(counts, 0);
+    }
+    return heap.toRetrievals(docRefs);
+  }
+
+  /**
+   * Perform score-at-a-time ranked retrieval on this input query Document
+   * vector over the impact-ordered postings of its tokens, returning the k
+   * best ranked.  Each step adds the next block of postings of the token
+   * whose next posting contributes most, so the largest contributions to
+   * every score are added first.  The sum of the next contribution of every
+   * token bounds the score of any document not yet seen, and how much more
+   * any seen document can gain; once it falls below the k'th best score
+   * accumulated, the postings left cannot bring a new document into the top
+   * k.  See approximateImpactOrdered for what happens then.
+   *
+   * @return The ranked Retrievals, or null if the query has a token with a
+   *         non-positive weight, which the bounds do not account for.
+   */
+  protected Retrieval[] retrieveImpactOrdered(HashMapVector vector, int k) {
+    int numTerms = 0;
+    int[] termIds = new int[vector.size()];
+    TokenInfo[] tokenInfos = new TokenInfo[vector.size()];
+    double[] weights = new double[vector.size()];
+    double queryLength = 0.0;
+    // Gather the indexed query tokens and their weights in the order that
+    // retrieveExhaustive incorporates them.
+    for (int i = 0; i < vector.size(); i++) {
+      TokenInfo tokenInfo = getTokenInfo(vector.termIdAt(i));
+      if (tokenInfo == null)
+        continue;
+      double weight = tokenInfo.idf * vector.weightAt(i);
+      if (weight <= 0.0)
+        return null;
+      termIds[numTerms] = vector.termIdAt(i);
+      tokenInfos[numTerms] = tokenInfo;
+      weights[numTerms] = weight;
+      queryLength = queryLength + weight * weight;
+      numTerms++;
+    }
+    queryLength = Math.sqrt(queryLength);
+    // The contribution of a posting to a final score is its impact times
+    // the weight of its token in the query over the length of the query
+    ImpactPostings[] postings = new ImpactPostings[numTerms];
+    double[] factors = new double[numTerms];
+    int[] positions = new int[numTerms];
+    double remaining = 0.0;
+    for (int t = 0; t < numTerms; t++) {
+      postings[t] = impactPostings(termIds[t], tokenInfos[t]);
+      factors[t] = weights[t] / queryLength;
+      remaining = remaining + factors[t] * postings[t].impacts[0];
+    }
+    ScoreAccumulator scores = getAccumulator();
+    // The k'th best score accumulated when last checked; scores only grow
+    double threshold = Double.NEGATIVE_INFINITY;
+    // Checking whether to stop visits every document seen, so it waits
+    // until the bound passes the last threshold found, or, once it has, until
+    // as many postings have been added since the last check
+    long postingsSinceCheck = 0;
+    boolean boundPassed = false;
+    boolean exhausted = numTerms == 0;
+    while (!exhausted) {
+      // Add the next block of the token whose next posting contributes most
+      int best = -1;
+      double bestContribution = 0.0;
+      for (int t = 0; t < numTerms; t++) {
+        if (positions[t] < postings[t].size()) {
+          double contribution = factors[t] * postings[t].impacts[positions[t]];
+          if (best < 0 || contribution > bestContribution) {
+            best = t;
+            bestContribution = contribution;
+          }
+        }
+      }
+      int[] docIds = postings[best].docIds;
+      double[] impacts = postings[best].impacts;
+      int start = positions[best];
+      int end = Math.min(start + TokenInfo.BLOCK_SIZE, docIds.length);
+      for (int i = start; i < end; i++) {
+        scores.add(docIds[i], factors[best] * impacts[i]);
+      }
+      positions[best] = end;
+      postingsSinceCheck = postingsSinceCheck + (end - start);
+      remaining = 0.0;
+      exhausted = true;
+      for (int t = 0; t < numTerms; t++) {
+        if (positions[t] < postings[t].size()) {
+          remaining = remaining + factors[t] * postings[t].impacts[positions[t]];
+          exhausted = false;
+        }
+      }
+      if (exhausted || scores.numTouched() < k)
+        continue;
+      if (postingsSinceCheck < scores.numTouched() &&
+          (boundPassed || remaining * (1.0 + PRUNING_SLACK) >= threshold))
+        continue;
+      postingsSinceCheck = 0;
+      threshold = kthBestScore(scores, k);
+      if (remaining * (1.0 + PRUNING_SLACK) >= threshold)
+        continue;
+      // No document not yet seen can enter the top k
+      boundPassed = true;
+      if (approximateImpactOrdered ||
+          countCandidates(scores, remaining, threshold) <= IMPACT_MAX_CANDIDATES_PER_RETRIEVAL * (long) k)
+        break;
+    }
+    Retrieval[] retrievals;
+    if (approximateImpactOrdered) {
+      RetrievalHeap heap = new RetrievalHeap(Math.min(k, scores.numTouched()));
+      for (int i = 0; i < scores.numTouched(); i++) {
+        int docId = scores.touchedDoc(i);
+        heap.offer(docId, scores.score(docId));
+      }
+      retrievals = heap.toRetrievals(docRefs);
+    } else {
+      // Once every posting is added, the candidates are the k best, and
+      // any within rounding error of the k'th
+      if (exhausted)
+        threshold = scores.numTouched() >= k ? kthBestScore(scores, k) : Double.NEGATIVE_INFINITY;
+      retrievals = scoreCandidates(vector, k, scores, remaining, threshold);
+    }
+    // Clear the accumulator for the next query
+    scores.reset();
     return retrievals;
   }
 
+  /**
+   * Return the postings of a token sorted by impact, sorted the first time
+   * a query uses the token since its IDF or the lengths of the documents
+   * last changed, and kept with its postings.
+   */
+  protected ImpactPostings impactPostings(int termId, TokenInfo tokenInfo) {
+    return tokenInfo.impactPostings(docRefs);
+  }
+
+  /**
+   * Return the k'th best score in an accumulator holding at least k documents
+   */
+  protected static double kthBestScore(ScoreAccumulator scores, int k) {
+    RetrievalHeap heap = new RetrievalHeap(k);
+    for (int i = 0; i < scores.numTouched(); i++) {
+      int docId = scores.touchedDoc(i);
+      heap.offer(docId, scores.score(docId));
+    }
+    return heap.minScore();
+  }
+
+  /**
+   * Return the number of documents in an accumulator that could still reach
+   * the threshold if they gained the remaining score
+   */
+  protected static int countCandidates(ScoreAccumulator scores, double remaining, double threshold) {
+    int count = 0;
+    for (int i = 0; i < scores.numTouched(); i++) {
+      if ((scores.score(scores.touchedDoc(i)) + remaining) * (1.0 + PRUNING_SLACK) >= threshold)
+        count++;
+    }
+    return count;
+  }
+
+  /**
+   * Score exactly, as retrieveExhaustive does, every document in an
+   * accumulator that could still reach the threshold if it gained the
+   * remaining score, and return the k best ranked.
+   */
+  protected Retrieval[] scoreCandidates(HashMapVector vector, int k, ScoreAccumulator scores,
+                                        double remaining, double threshold) {
+    int numCandidates = 0;
+    int[] candidates = new int[scores.numTouched()];
+    for (int i = 0; i < scores.numTouched(); i++) {
+      int docId = scores.touchedDoc(i);
+      if ((scores.score(docId) + remaining) * (1.0 + PRUNING_SLACK) >= threshold)
+        candidates[numCandidates++] = docId;
+    }
+    // Find the counts of the query tokens in the candidates in doc id order,
+    // so that each token's postings are read forward once
+    Arrays.sort(candidates, 0, numCandidates);
+    double[] exactScores = new double[numCandidates];
+    double queryLength = 0.0;
+    for (int i = 0; i < vector.size(); i++) {
+      TokenInfo tokenInfo = getTokenInfo(vector.termIdAt(i));
+      if (tokenInfo == null)
+        continue;
+      double weight = tokenInfo.idf * vector.weightAt(i);
+      queryLength = queryLength + weight * weight;
+      PostingsCursor cursor = tokenInfo.cursor();
+      for (int c = 0; c < numCandidates; c++) {
+        if (cursor.advance(candidates[c]) == candidates[c])
+          exactScores[c] = exactScores[c] + weight * tokenInfo.idf * cursor.tf();
+      }
+    }
+    queryLength = Math.sqrt(queryLength);
+    RetrievalHeap heap = new RetrievalHeap(Math.min(k, numCandidates));
+    for (int c = 0; c < numCandidates; c++) {
+      heap.offer(candidates[c], normalizeScore(queryLength, docRefs.get(candidates[c]), exactScores[c]));
+    }
+    return heap.toRetrievals(docRefs);
+  }
+
+  /**
+   * Return the accumulator reused to score queries on the current thread,
+   * (re)creating it if there are more indexed documents than it holds.
+   * Since each thread has its own, retrieve may be called from several
+   * threads at once.
+   */
+  protected ScoreAccumulator getAccumulator() {
+    ScoreAccumulator accumulator = accumulators.get();
+    if (accumulator == null || accumulator.capacity() < docRefs.size()) {
+      // Leave room for documents appended later rather than make a new one every append
+      int capacity = accumulator == null ? docRefs.size() :
+          Math.max(docRefs.size(), accumulator.capacity() + (accumulator.capacity() >> 3));
+      accumulator = new ScoreAccumulator(capacity);
+      accumulators.set(accumulator);
+    }
+    return accumulator;
+  }
+
   /**
    * Calculate the final score for a retrieval and return a Retrieval object representing
    * the retrieval with its final score.
@@ -330,10 +2301,22 @@ public class InvertedIndex {
    *     and score under the query with length queryLength
    */
   protected Retrieval getRetrieval(double queryLength, DocumentReference docRef, double score) {
-    // Normalize score for the lengths of the two document vectors
-    score = score / (queryLength * docRef.length);
     // Add a Retrieval for this document to the result array
-    return new Retrieval(docRef, score);
+    return new Retrieval(docRef, normalizeScore(queryLength, docRef, score));
+  }
+
+  /**
+   * Calculate the final score for a retrieval from its partially computed score.
+   *
+   * @param queryLength The length of the query vector, incorporated into the final score
+   * @param docRef The document reference for the document concerned
+   * @param score The partially computed score
+   * @return The final score for the document described by docRef
+   *     under the query with length queryLength
+   */
+  protected double normalizeScore(double queryLength, DocumentReference docRef, double score) {
+    // Normalize score for the lengths of the two document vectors
+    return score / (queryLength * docRef.length);
   }
 
 
@@ -350,26 +2333,64 @@ public class InvertedIndex {
    */
   public double incorporateToken(String token, double count,
                                  Map<DocumentReference, DoubleValue> retrievalHash) {
-    TokenInfo tokenInfo = tokenHash.get(token);
+    TokenInfo tokenInfo = getTokenInfo(token);
+    // If token is not in the index, it adds nothing and its squared weight is 0
+    if (tokenInfo == null) return 0.0;
+    // The weight of a token in the query is is IDF factor times the number
+    // of times it occurs in the query.
+    double weight = tokenInfo.idf * count;
+    int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+    int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+    // For each document occurrence indexed for this token, a block at a time...
+    for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+      int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+      for (int i = 0; i < blockSize; i++) {
+        DocumentReference docRef = docRefs.get(docIds[i]);
+        // Get the current score for this document in the retrievalHash.
+        DoubleValue val = retrievalHash.get(docRef);
+        if (val == null) {
+          // If this is a new retrieved document, create an initial score
+          // for it and store in the retrievalHash
+          val = new DoubleValue(0.0);
+          retrievalHash.put(docRef, val);
+        }
+        // Update the score for this document by adding the product
+        // of the weight of this token in the query and its weight
+        // in the retrieved document (IDF * occurrence count)
+        val.value = val.value + weight * tokenInfo.idf * tfs[i];
+      }
+    }
+    // Return the square of the weight of this token in the query
+    return weight * weight;
+  }
+
+  /**
+   * Retrieve the documents indexed by this token in the inverted index
+   * and add its contribution to their running total scores in the accumulator.
+   *
+   * @param termId The id of the token in the query to incorporate.
+   * @param count  The count of this token in the query.
+   * @param scores The accumulator of current scores indexed by doc id.
+   * @return The square of the weight of this token in the query vector for use
+   *         in calculating the length of the query vector.
+   */
+  public double incorporateToken(int termId, double count, ScoreAccumulator scores) {
+    TokenInfo tokenInfo = getTokenInfo(termId);
     // If token is not in the index, it adds nothing and its squared weight is 0
     if (tokenInfo == null) return 0.0;
     // The weight of a token in the query is is IDF factor times the number
     // of times it occurs in the query.
     double weight = tokenInfo.idf * count;
-    // For each document occurrence indexed for this token...
-    for (TokenOccurrence occ : tokenInfo.occList) {
-      // Get the current score for this document in the retrievalHash.
-      DoubleValue val = retrievalHash.get(occ.docRef);
-      if (val == null) {
-        // If this is a new retrieved document, create an initial score
-        // for it and store in the retrievalHash
-        val = new DoubleValue(0.0);
-        retrievalHash.put(occ.docRef, val);
-      }
-      // Update the score for this document by adding the product
-      // of the weight of this token in the query and its weight
-      // in the retrieved document (IDF * occurrence count)
-      val.value = val.value + weight * tokenInfo.idf * occ.count;
+    int[] docIds = scores.docIdBuffer;
+    int[] tfs = scores.tfBuffer;
+    // Add the product of the weight of this token in the query and its
+    // weight in each retrieved document (IDF * occurrence count), decoding
+    // the postings a block at a time
+    for (int block = 0; block < tokenInfo.numBlocks(); block++) {
+      int blockSize = tokenInfo.decodeBlock(block, docIds, tfs);
+      for (int i = 0; i < blockSize; i++) {
+        scores.add(docIds[i], weight * tokenInfo.idf * tfs[i]);
+      }
     }
     // Return the square of the weight of this token in the query
     return weight * weight;
@@ -391,7 +2412,7 @@ public class InvertedIndex {
       if (query.equals(""))
         break;
       // Get the ranked retrievals for this query string and present them
-      HashMapVector queryVector = (new TextStringDocument(query, stem)).hashMapVector();
+      HashMapVector queryVector = (new TextStringDocument(query, stem)).queryVector();
       Retrieval[] retrievals = retrieve(queryVector);
       presentRetrievals(queryVector, retrievals);
 //      this.showRetrievals(retrievals);
@@ -463,8 +2484,14 @@ public class InvertedIndex {
         }
         // Display the selected document number in Netscape
         if (showNumber > 0 && showNumber <= retrievals.length) {
+          DocumentReference docRef = retrievals[showNumber - 1].docRef;
+          if (docRef.file == null) {
+            // A document indexed from a string has no file to display or reread for feedback
+            System.out.println("Document " + showNumber + " is " + docRef.name + ", which has no file to show.");
+            continue;
+          }
           System.out.println("Showing document " + showNumber + " in the " + Browser.BROWSER_NAME + " window.");
-          Browser.display(retrievals[showNumber - 1].docRef.file);
+          Browser.display(docRef.file);
           // If accepting feedback and have not rated this item, then get relevance feedback
           if (feedback && !fdback.haveFeedback(showNumber))
             fdback.getFeedback(showNumber);
@@ -506,7 +2533,7 @@ public class InvertedIndex {
       System.out.println("No more retrievals.");
     for (int i = start; i < Math.min(retrievals.length, start + MAX_RETRIEVALS); i++) {
       System.out.println(MoreString.padTo((i + 1) + ". ", 4) +
-          MoreString.padTo(retrievals[i].docRef.file.getName(), 20) +
+          MoreString.padTo(retrievals[i].docRef.name, 20) +
           " Score: " +
           MoreMath.roundTo(retrievals[i].score, 5));
     }
@@ -529,8 +2556,8 @@ public class InvertedIndex {
 	 // System.out.println("Now processing queries...");
 	  
 	  if(query.equals("")) return result;
-	  HashMapVector queryVector = (new TextStringDocument(query, stem)).hashMapVector();
-	  Retrieval[] retrievals = retrieve(queryVector);
+	  HashMapVector queryVector = (new TextStringDocument(query, stem)).queryVector();
+	  Retrieval[] retrievals = retrieve(queryVector, MAX_RETRIEVALS);
 	      
 	  if (retrievals.length == 0) {
 		  System.out.println("\nNo matching documents found.");
@@ -555,7 +2582,7 @@ public class InvertedIndex {
 	      System.out.println("No more retrievals.");
 	    for (int i = start; i < Math.min(retrievals.length, start + MAX_RETRIEVALS); i++) {
 	      
-	      String tweetID = MoreString.padTo(retrievals[i].docRef.file.getName(), 20).substring(0, 17);
+	      String tweetID = MoreString.padTo(retrievals[i].docRef.name, 20).substring(0, 17);
 	      String score = String.valueOf(MoreMath.roundTo(retrievals[i].score, 5));
 	      QueryResult q = new QueryResult(tweetID, score);
 	      result.add(q);
@@ -601,7 +2628,9 @@ public class InvertedIndex {
     //print out first 100 tokens;
     index.printTokens(100);
     
-    // Interactively process queries to this index.
+    // Interactively process queries to this index, remembering the results
+    // of recent queries for when they are repeated
+    index.queryCache = new QueryCache(256, 10 * 60 * 1000);
     index.processQueries();
     
 //    List<String> query_result = index.processQuery("BBC World Service staff cuts");
@@ -0,0 +1,202 @@
+package ir.vsr;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A read-only inverted index that answers queries directly from a memory-mapped
+ * index file written by InvertedIndex.save. Only the tokens are read up front,
+ * to give them ids as loading the index would: their postings are decoded
+ * only when a query uses them, and document references are created only for
+ * documents that are retrieved.  Which parts of the file
+ * stay in memory is left to the operating system's page cache.
+ */
+
+public class MappedInvertedIndex extends InvertedIndex {
+
+  /**
+   * The mapped index file
+   */
+  protected IndexFile indexFile;
+
+  /**
+   * The rank in the file of the token with each id, or -1 for the ids of
+   * tokens not in the file
+   */
+  protected int[] ranks;
+
+  /**
+   * The postings sorted by impact of each token a query has retrieved in
+   * impact order, by token id, since the TokenInfo of a token is read from
+   * the file afresh for every query
+   */
+  protected ConcurrentMap<Integer, ImpactPostings> impactPostings =
+      new ConcurrentHashMap<Integer, ImpactPostings>();
+
+  /**
+   * Open a mapped index over a file written by InvertedIndex.save.
+   *
+   * @param file     The index file.
+   * @param feedback Whether relevance feedback should be used.
+   * @throws IOException If the file cannot be read or was written in another format version.
+   */
+  public MappedInvertedIndex(File file, boolean feedback) throws IOException {
+    super();
+    indexFile = new IndexFile(file);
+    this.feedback = feedback;
+    this.docType = indexFile.docType;
+    this.stem = indexFile.stem;
+    this.dirFile = indexFile.dirFile;
+    this.docRefs = new MappedDocumentList();
+    // Queries only look tokens up, so give those of the file ids now
+    int[] termIds = new int[indexFile.numTokens];
+    int maxTermId = -1;
+    for (int rank = 0; rank < termIds.length; rank++) {
+      termIds[rank] = TermDictionary.GLOBAL.id(indexFile.token(rank));
+      maxTermId = Math.max(maxTermId, termIds[rank]);
+    }
+    ranks = new int[maxTermId + 1];
+    Arrays.fill(ranks, -1);
+    for (int rank = 0; rank < termIds.length; rank++) {
+      ranks[termIds[rank]] = rank;
+    }
+  }
+
+  /**
+   * Find the token with the given id in the file and decode its postings,
+   * leaving out a token saved with an IDF of 0 as InvertedIndex does.  The
+   * table of TokenInfos is unused.
+   */
+  @Override
+  public TokenInfo getTokenInfo(int termId) {
+    int rank = termId < ranks.length ? ranks[termId] : -1;
+    if (rank < 0)
+      return null;
+    TokenInfo tokenInfo = indexFile.mappedTokenInfo(rank);
+    return tokenInfo.idf == 0.0 ? null : tokenInfo;
+  }
+
+  /**
+   * Find a token by binary search of the dictionary and decode its postings,
+   * leaving out a token saved with an IDF of 0 as InvertedIndex does.
+   */
+  @Override
+  protected TokenInfo getTokenInfo(String token) {
+    int rank = indexFile.findToken(token);
+    if (rank < 0)
+      return null;
+    TokenInfo tokenInfo = indexFile.mappedTokenInfo(rank);
+    return tokenInfo.idf == 0.0 ? null : tokenInfo;
+  }
+
+  /**
+   * Return the postings of a token sorted by impact, sorted the first time
+   * a query uses the token and kept, as the file never changes.
+   */
+  @Override
+  protected ImpactPostings impactPostings(int termId, TokenInfo tokenInfo) {
+    ImpactPostings sorted = impactPostings.get(termId);
+    if (sorted == null) {
+      // If two threads sort them at once, both use the same
+      impactPostings.putIfAbsent(termId, new ImpactPostings(tokenInfo, docRefs));
+      sorted = impactPostings.get(termId);
+    }
+    return sorted;
+  }
+
+  /**
+   * Return the number of tokens indexed.
+   */
+  @Override
+  public int size() {
+    return indexFile.numTokens;
+  }
+
+  /**
+   * Print out the index by listing each token and the documents it occurs in.
+   */
+  @Override
+  public void print() {
+    for (int rank = 0; rank < indexFile.numTokens; rank++) {
+      printTokenInfo(indexFile.token(rank), indexFile.mappedTokenInfo(rank));
+    }
+  }
+
+  /**
+   * Print out the first number tokens in sorted order.
+   */
+  @Override
+  public void printTokens(int number) {
+    for (int rank = 0; rank < Math.min(number, indexFile.numTokens); rank++) {
+      System.out.println(indexFile.token(rank));
+    }
+  }
+
+  /**
+   * A mapped index cannot be changed.
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A MappedInvertedIndex is read-only");
+  }
+
+  /**
+   * A mapped index cannot be appended to.
+   */
+  @Override
+  public void addDocuments(Iterator<TextStringDocument> docs) {
+    throw new UnsupportedOperationException("A MappedInvertedIndex is read-only");
+  }
+
+  /**
+   * A mapped index cannot have documents deleted.
+   */
+  @Override
+  public boolean deleteDocument(String name) {
+    throw new UnsupportedOperationException("A MappedInvertedIndex is read-only");
+  }
+
+  /**
+   * A mapped index cannot have documents replaced.
+   */
+  @Override
+  public void replaceDocument(TextStringDocument doc) {
+    throw new UnsupportedOperationException("A MappedInvertedIndex is read-only");
+  }
+
+  /**
+   * A mapped index is already saved in its file.
+   */
+  @Override
+  public void save(File file) throws IOException {
+    throw new UnsupportedOperationException("A MappedInvertedIndex is read-only");
+  }
+
+  /**
+   * The documents of the mapped index, whose references are created from
+   * the file the first time each is requested.  Safe for concurrent queries:
+   * if two threads request a new reference at once, both get the same one.
+   */
+  protected class MappedDocumentList extends AbstractList<DocumentReference> {
+    /**
+     * The references created so far, indexed by doc id
+     */
+    protected AtomicReferenceArray<DocumentReference> docRefs =
+        new AtomicReferenceArray<DocumentReference>(indexFile.numDocs);
+
+    public DocumentReference get(int docId) {
+      DocumentReference docRef = docRefs.get(docId);
+      if (docRef == null) {
+        docRefs.compareAndSet(docId, null, indexFile.docReference(docId));
+        docRef = docRefs.get(docId);
+      }
+      return docRef;
+    }
+
+    public int size() {
+      return docRefs.length();
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package ir.vsr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The frozen postings of a token in a memory-mapped index file, read in
+ * place.  Its block tables and compressed blocks are left in the file and
+ * decoded from there a block at a time as they are visited, so looking it up
+ * copies nothing but its statistics.
+ */
+
+public class MappedTokenInfo extends TokenInfo {
+  /**
+   * The token's record in the file from its block tables on: the last doc
+   * id of each block, the offset of each block, then the compressed blocks
+   */
+  protected final ByteBuffer record;
+
+  /**
+   * The number of blocks of postings
+   */
+  protected final int numBlocks;
+
+  /**
+   * The number of bytes of compressed blocks
+   */
+  protected final int postingsLength;
+
+  /**
+   * Read the postings of a token in place.
+   *
+   * @param record         The token's record from its block tables on, starting at position 0.
+   * @param idf            The IDF of the token.
+   * @param maxImpact      The largest impact of the token in any document.
+   * @param maxCount       The largest number of times the token occurs in any document.
+   * @param numDocs        The number of documents in which the token occurs.
+   * @param postingsLength The number of bytes of compressed blocks.
+   */
+  public MappedTokenInfo(ByteBuffer record, double idf, double maxImpact, int maxCount, int numDocs,
+                         int postingsLength) {
+    this.record = record;
+    this.idf = idf;
+    this.maxImpact = maxImpact;
+    this.maxCount = maxCount;
+    this.numDocs = numDocs;
+    this.postingsLength = postingsLength;
+    numBlocks = super.numBlocks();
+    docIds = null;
+    tfs = null;
+  }
+
+  /**
+   * The postings cannot be added to, so count as frozen
+   */
+  @Override
+  public boolean isFrozen() {
+    return true;
+  }
+
+  /**
+   * The postings cannot be added to
+   */
+  @Override
+  public void addOccurrence(int docId, int count) {
+    throw new UnsupportedOperationException("The postings of a MappedTokenInfo cannot be added to");
+  }
+
+  @Override
+  public int numBlocks() {
+    return numBlocks;
+  }
+
+  @Override
+  public int blockLastDocId(int block) {
+    return record.getInt(4 * block);
+  }
+
+  @Override
+  public int decodeBlock(int block, int[] docIdBuffer, int[] tfBuffer) {
+    int count = Math.min(BLOCK_SIZE, numDocs - block * BLOCK_SIZE);
+    // Absolute reads, so readers sharing the record do not share a position
+    int offset = 8 * numBlocks + record.getInt(4 * (numBlocks + block));
+    // Gaps in the first block are from doc id 0, later ones from the previous block
+    int docId = block == 0 ? 0 : blockLastDocId(block - 1);
+    for (int i = 0; i < count; i++) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = record.get(offset++);
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+      docId += value;
+      docIdBuffer[i] = docId;
+    }
+    for (int i = 0; i < count; i++) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = record.get(offset++);
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+      tfBuffer[i] = value;
+    }
+    return count;
+  }
+
+  @Override
+  public int compressedSize() {
+    return postingsLength + 8 * numBlocks;
+  }
+}
@@ -0,0 +1,51 @@
+package ir.vsr;
+
+/**
+ * Paces a merge of index segments to a given number of postings per
+ * second, by sleeping whenever it gets ahead, so that merging in the
+ * background leaves the processor to queries.
+ */
+
+public class MergeThrottle {
+  /**
+   * The postings per second allowed, or 0 for no limit
+   */
+  protected final double postingsPerSecond;
+
+  /**
+   * When the merge started, in System.nanoTime
+   */
+  protected final long start = System.nanoTime();
+
+  /**
+   * The postings merged so far
+   */
+  protected long postings = 0;
+
+  /**
+   * Create a throttle allowing the given postings per second, or 0 for no limit
+   */
+  public MergeThrottle(double postingsPerSecond) {
+    this.postingsPerSecond = postingsPerSecond;
+  }
+
+  /**
+   * Count postings merged, sleeping if the merge is ahead of its pace.  If
+   * the thread is interrupted, stops sleeping and leaves it interrupted.
+   */
+  public void pace(long merged) {
+    postings = postings + merged;
+    if (postingsPerSecond <= 0.0)
+      return;
+    long ahead = (long) (postings / postingsPerSecond * 1.0e9) - (System.nanoTime() - start);
+    // Sleep only when far enough ahead for the sleep to be worth taking
+    if (ahead < 1000000L)
+      return;
+    try {
+      Thread.sleep(ahead / 1000000L, (int) (ahead % 1000000L));
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
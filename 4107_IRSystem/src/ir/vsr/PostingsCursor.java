@@ -0,0 +1,128 @@
+package ir.vsr;
+
+/**
+ * A cursor over the postings of a token in an inverted index, visiting the
+ * documents in which it occurs in increasing order of doc id. Used for
+ * document-at-a-time evaluation of queries.  Postings are decoded one block
+ * at a time, and blocks wholly before a target doc id are skipped undecoded.
+ * Blocks may decode to fewer postings than they were written with, or none,
+ * as when deleted documents are left out; the last doc id of a block is
+ * then only an upper bound on the doc ids decoded.
+ */
+
+public class PostingsCursor {
+  /**
+   * The doc id reported once the cursor has moved past the last posting
+   */
+  public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+  /**
+   * The postings being visited
+   */
+  protected TokenInfo tokenInfo;
+
+  /**
+   * The current block, and the decoded doc ids and counts in it
+   */
+  protected int block = -1;
+  protected int[] docIds = new int[TokenInfo.BLOCK_SIZE];
+  protected int[] tfs = new int[TokenInfo.BLOCK_SIZE];
+  protected int blockSize = 0;
+
+  /**
+   * The index of the current posting within the current block
+   */
+  protected int position = 0;
+
+  /**
+   * Create a cursor positioned on the first posting of this token
+   */
+  public PostingsCursor(TokenInfo tokenInfo) {
+    this.tokenInfo = tokenInfo;
+    loadBlock(0);
+  }
+
+  /**
+   * Return the id of the current document, or NO_MORE_DOCS if exhausted
+   */
+  public int docId() {
+    return position < blockSize ? docIds[position] : NO_MORE_DOCS;
+  }
+
+  /**
+   * Return the number of times the token occurs in the current document
+   */
+  public int tf() {
+    return tfs[position];
+  }
+
+  /**
+   * Move to the next posting and return its doc id
+   */
+  public int next() {
+    position++;
+    if (position == blockSize && block + 1 < tokenInfo.numBlocks())
+      loadBlock(block + 1);
+    return docId();
+  }
+
+  /**
+   * Move to the first posting whose doc id is at least target and return
+   * its doc id.  Finds the block holding the target from the last doc id of
+   * each block, decoding only that block, then binary searches within it.
+   */
+  public int advance(int target) {
+    if (position >= blockSize || docIds[position] >= target)
+      return docId();
+    if (docIds[blockSize - 1] < target) {
+      // Binary search the later blocks for the first whose last doc id >= target
+      int low = block + 1;
+      int high = tokenInfo.numBlocks();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (tokenInfo.blockLastDocId(mid) < target)
+          low = mid + 1;
+        else
+          high = mid;
+      }
+      if (low == tokenInfo.numBlocks()) {
+        position = blockSize;
+        return NO_MORE_DOCS;
+      }
+      loadBlock(low);
+    }
+    // Binary search the block for the first doc id >= target
+    int low = position;
+    int high = blockSize - 1;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (docIds[mid] < target)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    position = low;
+    if (docIds[position] < target) {
+      // Only documents left out of the block reached the target
+      if (block + 1 < tokenInfo.numBlocks())
+        loadBlock(block + 1);
+      else
+        position = blockSize;
+    }
+    return docId();
+  }
+
+  /**
+   * Decode a block, or the first after it with any postings, and position
+   * the cursor on its first posting
+   */
+  protected void loadBlock(int block) {
+    this.block = block;
+    blockSize = block < tokenInfo.numBlocks() ? tokenInfo.decodeBlock(block, docIds, tfs) : 0;
+    while (blockSize == 0 && this.block + 1 < tokenInfo.numBlocks()) {
+      this.block++;
+      blockSize = tokenInfo.decodeBlock(this.block, docIds, tfs);
+    }
+    position = 0;
+  }
+}
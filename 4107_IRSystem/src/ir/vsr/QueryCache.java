@@ -0,0 +1,143 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * A cache of the ranked retrievals of recent queries, so that repeating a
+ * query does not score its postings again.  Queries are keyed by their
+ * vector, after tokenizing, stopword removal and stemming, so queries that
+ * differ only in word order, case or punctuation share an entry.  Holds at
+ * most a fixed number of entries, evicting the least recently used, and
+ * drops entries older than a time to live.  Must be invalidated whenever
+ * the index it caches changes.  Safe to use from several threads at once.
+ */
+
+public class QueryCache {
+
+  /**
+   * The cached retrievals and when they were cached
+   */
+  protected static class Entry {
+    Retrieval[] retrievals;
+    long time;
+
+    Entry(Retrieval[] retrievals, long time) {
+      this.retrievals = retrievals;
+      this.time = time;
+    }
+  }
+
+  /**
+   * The entries, from least to most recently used
+   */
+  protected LinkedHashMap<String, Entry> entries;
+
+  /**
+   * The most entries to hold
+   */
+  protected int maxEntries;
+
+  /**
+   * How long an entry stays valid, in nanoseconds, or 0 to keep entries until evicted
+   */
+  protected long timeToLive;
+
+  /**
+   * The number of lookups that found a valid entry and that did not
+   */
+  protected long hits = 0;
+  protected long misses = 0;
+
+  /**
+   * Create an empty cache.
+   *
+   * @param maxEntries       The most queries to hold.
+   * @param timeToLiveMillis How long an entry stays valid, in milliseconds,
+   *                         or 0 to keep entries until they are evicted.
+   */
+  public QueryCache(final int maxEntries, long timeToLiveMillis) {
+    this.maxEntries = maxEntries;
+    this.timeToLive = timeToLiveMillis * 1000000;
+    entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Return the key of the query with this vector asking for the k best
+   * retrievals in the given retrieval mode: the mode and k, then the ids of
+   * its tokens in sorted order with their weights.
+   */
+  public static String key(HashMapVector vector, int k, int mode) {
+    int[] termIds = new int[vector.size()];
+    for (int i = 0; i < termIds.length; i++) {
+      termIds[i] = vector.termIdAt(i);
+    }
+    Arrays.sort(termIds);
+    StringBuilder key = new StringBuilder();
+    key.append(mode).append(':').append(k);
+    for (int termId : termIds) {
+      key.append(' ').append(termId).append('=').append(vector.getWeight(termId));
+    }
+    return key.toString();
+  }
+
+  /**
+   * Return the cached retrievals for a key, or null if there is no valid entry
+   */
+  public synchronized Retrieval[] get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && timeToLive > 0 && System.nanoTime() - entry.time > timeToLive) {
+      entries.remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.retrievals;
+  }
+
+  /**
+   * Cache the retrievals for a key
+   */
+  public synchronized void put(String key, Retrieval[] retrievals) {
+    if (maxEntries > 0)
+      entries.put(key, new Entry(retrievals, System.nanoTime()));
+  }
+
+  /**
+   * Remove every entry, as when the cached index changes
+   */
+  public synchronized void invalidate() {
+    entries.clear();
+  }
+
+  /**
+   * Return the number of entries held
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Return the number of lookups that found a valid entry
+   */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  /**
+   * Return the number of lookups that did not find a valid entry
+   */
+  public synchronized long misses() {
+    return misses;
+  }
+
+  public synchronized String toString() {
+    return "QueryCache: " + entries.size() + " entries, " + hits + " hits, " + misses + " misses";
+  }
+}
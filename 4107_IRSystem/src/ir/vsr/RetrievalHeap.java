@@ -0,0 +1,139 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * A bounded min-heap that keeps the k best scoring documents offered to it,
+ * stored as parallel primitive arrays of doc ids and scores so that
+ * Retrieval objects are only created for the documents that survive.
+ * Ties in score are broken in favor of the document with the smaller id.
+ */
+
+public class RetrievalHeap {
+  /**
+   * The maximum number of documents kept
+   */
+  protected int k;
+
+  /**
+   * The ids of the documents in the heap, worst document at position 0
+   */
+  protected int[] docIds;
+
+  /**
+   * The scores of the documents in the heap
+   */
+  protected double[] scores;
+
+  /**
+   * The number of documents currently in the heap
+   */
+  protected int size = 0;
+
+  /**
+   * Create an empty heap keeping at most k documents
+   */
+  public RetrievalHeap(int k) {
+    this.k = k;
+    docIds = new int[k];
+    scores = new double[k];
+  }
+
+  /**
+   * Return the number of documents currently in the heap
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Return true iff the heap already holds k documents
+   */
+  public boolean isFull() {
+    return size == k;
+  }
+
+  /**
+   * Return the score a document must beat to enter the heap once it is full
+   */
+  public double minScore() {
+    return (size == k && k > 0) ? scores[0] : Double.NEGATIVE_INFINITY;
+  }
+
+  /**
+   * Offer a document to the heap, keeping it if it is among the best k so far.
+   *
+   * @return true if the document was kept
+   */
+  public boolean offer(int docId, double score) {
+    if (size < k) {
+      // Add at the bottom and sift up toward the root
+      int pos = size++;
+      while (pos > 0) {
+        int parent = (pos - 1) >>> 1;
+        if (!worse(docId, score, docIds[parent], scores[parent]))
+          break;
+        docIds[pos] = docIds[parent];
+        scores[pos] = scores[parent];
+        pos = parent;
+      }
+      docIds[pos] = docId;
+      scores[pos] = score;
+      return true;
+    }
+    if (k == 0 || worse(docId, score, docIds[0], scores[0]))
+      return false;
+    // Replace the worst document at the root and sift down
+    siftDown(docId, score);
+    return true;
+  }
+
+  /**
+   * Place this document at the root and move it down to its proper position
+   */
+  protected void siftDown(int docId, double score) {
+    int pos = 0;
+    int half = size >>> 1;
+    while (pos < half) {
+      int child = 2 * pos + 1;
+      int right = child + 1;
+      if (right < size && worse(docIds[right], scores[right], docIds[child], scores[child]))
+        child = right;
+      if (!worse(docIds[child], scores[child], docId, score))
+        break;
+      docIds[pos] = docIds[child];
+      scores[pos] = scores[child];
+      pos = child;
+    }
+    docIds[pos] = docId;
+    scores[pos] = score;
+  }
+
+  /**
+   * Return true if the first document ranks below the second
+   */
+  protected static boolean worse(int docId1, double score1, int docId2, double score2) {
+    if (score1 != score2)
+      return score1 < score2;
+    return docId1 > docId2;
+  }
+
+  /**
+   * Empty the heap into an array of Retrievals ranked from best to worst.
+   *
+   * @param docRefs The document references of the index, indexed by doc id.
+   */
+  public Retrieval[] toRetrievals(List<DocumentReference> docRefs) {
+    Retrieval[] retrievals = new Retrieval[size];
+    // Repeatedly remove the worst document, filling the array from the end
+    while (size > 0) {
+      int docId = docIds[0];
+      double score = scores[0];
+      size--;
+      if (size > 0)
+        siftDown(docIds[size], scores[size]);
+      retrievals[size] = new Retrieval(docRefs.get(docId), score);
+    }
+    return retrievals;
+  }
+}
@@ -0,0 +1,100 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * A reusable set of partial retrieval scores indexed by dense document id.
+ * Keeps a list of the documents whose score has been touched since the
+ * last reset so that it can be cleared in time proportional to the number
+ * of retrieved documents rather than the size of the index.
+ */
+
+public class ScoreAccumulator {
+  /**
+   * The partial score of each document, indexed by doc id
+   */
+  protected double[] scores;
+
+  /**
+   * Whether each document has been touched since the last reset
+   */
+  protected boolean[] touched;
+
+  /**
+   * The ids of the touched documents, in the order they were first touched
+   */
+  protected int[] touchedDocs;
+
+  /**
+   * The number of valid entries in touchedDocs
+   */
+  protected int numTouched = 0;
+
+  /**
+   * Buffers into which a block of postings is decoded before it is scored
+   */
+  protected final int[] docIdBuffer = new int[TokenInfo.BLOCK_SIZE];
+  protected final int[] tfBuffer = new int[TokenInfo.BLOCK_SIZE];
+
+  /**
+   * Create an accumulator for an index with this many documents
+   */
+  public ScoreAccumulator(int numDocs) {
+    scores = new double[numDocs];
+    touched = new boolean[numDocs];
+    touchedDocs = new int[Math.min(numDocs, 1024)];
+  }
+
+  /**
+   * Return the number of documents this accumulator can hold
+   */
+  public int capacity() {
+    return scores.length;
+  }
+
+  /**
+   * Add to the partial score of a document, noting it as retrieved
+   */
+  public void add(int docId, double score) {
+    if (!touched[docId]) {
+      touched[docId] = true;
+      if (numTouched == touchedDocs.length)
+        touchedDocs = Arrays.copyOf(touchedDocs, Math.min(scores.length, 2 * numTouched));
+      touchedDocs[numTouched++] = docId;
+    }
+    scores[docId] = scores[docId] + score;
+  }
+
+  /**
+   * Return the number of documents touched since the last reset
+   */
+  public int numTouched() {
+    return numTouched;
+  }
+
+  /**
+   * Return the id of the i'th touched document
+   */
+  public int touchedDoc(int i) {
+    return touchedDocs[i];
+  }
+
+  /**
+   * Return the current partial score of a document
+   */
+  public double score(int docId) {
+    return scores[docId];
+  }
+
+  /**
+   * Clear the scores of all touched documents
+   */
+  public void reset() {
+    for (int i = 0; i < numTouched; i++) {
+      int docId = touchedDocs[i];
+      scores[docId] = 0.0;
+      touched[docId] = false;
+    }
+    numTouched = 0;
+  }
+}
@@ -0,0 +1,194 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * The postings of a token across the main index and the segments of
+ * documents appended to it since it was last merged, read as one list in
+ * doc id order, leaving out deleted documents.  The blocks of each part are
+ * numbered on from those of the part before, and its doc ids offset by the
+ * id of its first document in the whole index, so cursors and scoring read
+ * it like any frozen TokenInfo.  A block may decode to fewer postings than
+ * it holds once documents are deleted, or to none.
+ * <p/>
+ * Its IDF is computed from the number of documents in the whole index and
+ * the number in which the token occurs in any part, counting deleted
+ * documents until merges leave them out, unless it is given one cached
+ * from before; numDocs counts only the postings it decodes.  Its bounds
+ * come from the bounds of the frozen parts, rescaled from the IDF they were
+ * computed with unless it was 0, and from the postings of the others.  It
+ * describes the parts as they were when it was made, so must be made again
+ * whenever documents are added, deleted or merged.
+ */
+
+public class SegmentedTokenInfo extends TokenInfo {
+  /**
+   * The postings of the token in each part, in doc id order
+   */
+  protected final TokenInfo[] parts;
+
+  /**
+   * The id in the whole index of the first document of each part
+   */
+  protected final int[] bases;
+
+  /**
+   * The ids within each part of its deleted documents, or null
+   */
+  protected final BitSet[] deletions;
+
+  /**
+   * The number of the first block of each part, then the number of blocks
+   */
+  protected final int[] firstBlocks;
+
+  /**
+   * Chain the postings of a token in the given parts.
+   *
+   * @param parts     The token's postings in each part that has any, in doc id order.
+   * @param bases     The id in the whole index of the first document of each part.
+   * @param deletions The ids within each part of its deleted documents, or null if none are.
+   * @param docRefs   Every indexed document, with its vector length computed.
+   */
+  public SegmentedTokenInfo(TokenInfo[] parts, int[] bases, BitSet[] deletions, List<DocumentReference> docRefs) {
+    this(parts, bases, deletions, idf(parts, docRefs.size()), docRefs);
+  }
+
+  /**
+   * Chain the postings of a token in the given parts, giving it an IDF
+   * computed before, as from CorpusStatistics.
+   *
+   * @param parts     The token's postings in each part that has any, in doc id order.
+   * @param bases     The id in the whole index of the first document of each part.
+   * @param deletions The ids within each part of its deleted documents, or null if none are.
+   * @param idf       The IDF of the token.
+   * @param docRefs   Every indexed document, with its vector length computed.
+   */
+  public SegmentedTokenInfo(TokenInfo[] parts, int[] bases, BitSet[] deletions, double idf,
+                            List<DocumentReference> docRefs) {
+    this.parts = parts;
+    this.bases = bases;
+    this.deletions = deletions;
+    docIds = null;
+    tfs = null;
+    firstBlocks = new int[parts.length + 1];
+    for (int p = 0; p < parts.length; p++) {
+      firstBlocks[p + 1] = firstBlocks[p] + parts[p].numBlocks();
+    }
+    this.idf = idf;
+    numDocs = 0;
+    int[] blockDocIds = new int[BLOCK_SIZE];
+    int[] blockTfs = new int[BLOCK_SIZE];
+    for (int p = 0; p < parts.length; p++) {
+      TokenInfo part = parts[p];
+      // Bounds computed with an IDF of 0 cannot be rescaled, so come from the postings
+      boolean rescaled = part.isFrozen() && part.idf != 0.0;
+      if (rescaled) {
+        maxImpact = Math.max(maxImpact, part.maxImpact / part.idf * idf);
+        maxCount = Math.max(maxCount, part.maxCount);
+        if (deletions[p] == null) {
+          numDocs = numDocs + part.numDocs;
+          continue;
+        }
+      }
+      for (int block = firstBlocks[p]; block < firstBlocks[p + 1]; block++) {
+        int count = decodeBlock(block, blockDocIds, blockTfs);
+        numDocs = numDocs + count;
+        if (rescaled)
+          continue;
+        for (int i = 0; i < count; i++) {
+          maxImpact = Math.max(maxImpact, idf * blockTfs[i] / docRefs.get(blockDocIds[i]).length);
+          maxCount = Math.max(maxCount, blockTfs[i]);
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the IDF of a token from the number of documents in the whole
+   * index and the number in which it occurs in any part
+   */
+  protected static double idf(TokenInfo[] parts, int numDocs) {
+    int frequency = 0;
+    for (TokenInfo part : parts) {
+      frequency = frequency + part.numDocs;
+    }
+    return Math.log((double) numDocs / frequency);
+  }
+
+  /**
+   * Return the part holding a block
+   */
+  protected int part(int block) {
+    int p = 0;
+    while (firstBlocks[p + 1] <= block)
+      p++;
+    return p;
+  }
+
+  /**
+   * The postings cannot be added to, so count as frozen
+   */
+  @Override
+  public boolean isFrozen() {
+    return true;
+  }
+
+  /**
+   * The postings cannot be added to
+   */
+  @Override
+  public void addOccurrence(int docId, int count) {
+    throw new UnsupportedOperationException("The postings of a SegmentedTokenInfo cannot be added to");
+  }
+
+  @Override
+  public int numBlocks() {
+    return firstBlocks[parts.length];
+  }
+
+  @Override
+  public int blockLastDocId(int block) {
+    int p = part(block);
+    return bases[p] + parts[p].blockLastDocId(block - firstBlocks[p]);
+  }
+
+  @Override
+  public int decodeBlock(int block, int[] docIdBuffer, int[] tfBuffer) {
+    int p = part(block);
+    int count = parts[p].decodeBlock(block - firstBlocks[p], docIdBuffer, tfBuffer);
+    int base = bases[p];
+    BitSet deleted = deletions[p];
+    if (deleted == null) {
+      if (base != 0) {
+        for (int i = 0; i < count; i++) {
+          docIdBuffer[i] = docIdBuffer[i] + base;
+        }
+      }
+      return count;
+    }
+    // Move the postings of documents not deleted to the front
+    int kept = 0;
+    for (int i = 0; i < count; i++) {
+      if (!deleted.get(docIdBuffer[i])) {
+        docIdBuffer[kept] = docIdBuffer[i] + base;
+        tfBuffer[kept] = tfBuffer[i];
+        kept++;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Return the number of bytes taken by the frozen parts
+   */
+  @Override
+  public int compressedSize() {
+    int size = 0;
+    for (TokenInfo part : parts) {
+      if (part.isFrozen())
+        size = size + part.compressedSize();
+    }
+    return size;
+  }
+}
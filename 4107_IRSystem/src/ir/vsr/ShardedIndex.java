@@ -0,0 +1,458 @@
+package ir.vsr;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * An inverted index split into shards, each a full InvertedIndex of the
+ * documents whose names hash to it.  Every shard weights tokens by their IDF
+ * across all the shards, so its scores are those an index of all the
+ * documents would give.  A query is retrieved from every shard at once,
+ * each on a thread of its own, and their top k are merged into the top k of
+ * the whole, so a single query's latency falls with the number of cores.
+ * Since the shards share nothing but the IDFs, they could as well be
+ * queried in other processes.
+ * <p/>
+ * Documents cannot be appended to or deleted from a sharded index, and it
+ * cannot be saved.  Its retrieval settings are set with the setters of
+ * InvertedIndex, which pass them on to every shard, rather than on its
+ * fields, which the shards do not see.  Close it once done with, to stop
+ * the threads it queries the shards on.
+ */
+
+public class ShardedIndex extends InvertedIndex {
+  /**
+   * The shards, each indexing the documents whose names hash to it
+   */
+  protected final InvertedIndex[] shards;
+
+  /**
+   * The IDF of every token across all the shards
+   */
+  protected CorpusStatistics global;
+
+  /**
+   * The number of tokens with an IDF other than 0 across all the shards
+   */
+  protected int numGlobalTerms = 0;
+
+  /**
+   * The threads that index the shards and retrieve queries from them
+   */
+  protected final ExecutorService executor;
+
+  /**
+   * Create an index of named string documents, such as the tweets of a
+   * single file, split into the given number of shards.  Relevance feedback
+   * rereads the documents rated from their files, so cannot be used.
+   *
+   * @param docs      The documents to index, each with a name to retrieve it by.
+   * @param numShards The number of shards.
+   * @param stem      Whether the documents' tokens were stemmed with Porter stemmer.
+   * @param feedback  Whether relevance feedback should be used; must be false.
+   */
+  public ShardedIndex(Iterator<TextStringDocument> docs, int numShards, boolean stem, boolean feedback) {
+    this(docs, numShards, stem, feedback, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Create an index of named string documents split into the given number of
+   * shards as the constructor above does, indexing them on the given number
+   * of threads, or one a shard if there are more shards.
+   *
+   * @param docs            The documents to index, each with a name to retrieve it by.
+   * @param numShards       The number of shards.
+   * @param stem            Whether the documents' tokens were stemmed with Porter stemmer.
+   * @param feedback        Whether relevance feedback should be used; must be false.
+   * @param indexingThreads The number of threads that index the documents.
+   */
+  public ShardedIndex(Iterator<TextStringDocument> docs, int numShards, boolean stem, boolean feedback,
+      int indexingThreads) {
+    super();
+    this.indexingThreads = indexingThreads;
+    if (numShards < 1)
+      throw new IllegalArgumentException("A ShardedIndex needs at least one shard");
+    if (feedback)
+      throw new IllegalArgumentException("Relevance feedback needs documents indexed from files");
+    this.stem = stem;
+    this.feedback = feedback;
+    shards = new InvertedIndex[numShards];
+    for (int s = 0; s < numShards; s++) {
+      shards[s] = new InvertedIndex();
+      shards[s].stem = stem;
+      shards[s].feedback = feedback;
+    }
+    int numThreads = Math.max(indexingThreads, numShards);
+    executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+      public Thread newThread(Runnable task) {
+        Thread thread = new Thread(task, "ShardedIndex worker");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    indexShards(docs, numThreads);
+    computeGlobalIDF();
+    for (InvertedIndex shard : shards) {
+      docRefs.addAll(shard.docRefs);
+    }
+    System.out.println("Indexed " + docRefs.size() + " documents in " + numShards + " shards with " +
+        size() + " unique terms.");
+  }
+
+  /**
+   * Return the shard that indexes the document with the given name
+   */
+  public int shard(String name) {
+    return (name.hashCode() & Integer.MAX_VALUE) % shards.length;
+  }
+
+  /**
+   * Return the shards, to tune or inspect one by one
+   */
+  public InvertedIndex[] shards() {
+    return shards.clone();
+  }
+
+  /**
+   * Index the documents of an iterator into the shards.  Each batch of
+   * documents read is split by shard, and the documents of each shard are
+   * indexed into a partial index on a thread of their own; the partial
+   * indexes of each shard are merged in order, so its doc ids follow the
+   * order the documents are read in.  Only a few batches per thread are read
+   * ahead, so memory stays bounded however many documents there are.
+   */
+  protected void indexShards(Iterator<TextStringDocument> docs, int numThreads) {
+    Deque<Future<InvertedIndex>> partials = new ArrayDeque<Future<InvertedIndex>>();
+    while (docs.hasNext()) {
+      List<List<TextStringDocument>> batches = new ArrayList<List<TextStringDocument>>();
+      for (int s = 0; s < shards.length; s++) {
+        batches.add(new ArrayList<TextStringDocument>());
+      }
+      for (int i = 0; i < MIN_DOCUMENTS_PER_INDEXING_THREAD && docs.hasNext(); i++) {
+        TextStringDocument doc = docs.next();
+        batches.get(shard(doc.name)).add(doc);
+      }
+      // One partial index per shard for each batch, so they come off the queue in shard order
+      for (final List<TextStringDocument> batch : batches) {
+        partials.addLast(executor.submit(new Callable<InvertedIndex>() {
+          public InvertedIndex call() {
+            return indexPartition(batch);
+          }
+        }));
+      }
+      if (partials.size() > 2 * numThreads * shards.length)
+        mergeBatch(partials);
+    }
+    while (!partials.isEmpty()) {
+      mergeBatch(partials);
+    }
+  }
+
+  /**
+   * Merge the partial index of each shard for the oldest batch into the shard
+   */
+  protected void mergeBatch(Deque<Future<InvertedIndex>> partials) {
+    for (InvertedIndex shard : shards) {
+      shard.mergePartialIndex(awaitPartialIndex(partials.removeFirst()));
+    }
+  }
+
+  /**
+   * Compute the IDF of every token from the number of documents in which it
+   * occurs in all the shards, then the lengths of the documents of every
+   * shard with it, each shard on a thread of its own.
+   */
+  protected void computeGlobalIDF() {
+    int numDocs = 0;
+    int[] frequencies = new int[TermDictionary.GLOBAL.size()];
+    for (InvertedIndex shard : shards) {
+      numDocs = numDocs + shard.docRefs.size();
+      for (int rank = 0; rank < shard.numTerms; rank++) {
+        int termId = shard.termIds[rank];
+        frequencies[termId] = frequencies[termId] + shard.tokenInfos[termId].numDocs;
+      }
+    }
+    global = new CorpusStatistics(numDocs);
+    for (int termId = 0; termId < frequencies.length; termId++) {
+      if (frequencies[termId] > 0) {
+        double idf = Math.log((double) numDocs / frequencies[termId]);
+        global.setIdf(termId, idf);
+        if (idf != 0.0)
+          numGlobalTerms++;
+      }
+    }
+    List<Future<InvertedIndex>> done = new ArrayList<Future<InvertedIndex>>();
+    for (final InvertedIndex shard : shards) {
+      done.add(executor.submit(new Callable<InvertedIndex>() {
+        public InvertedIndex call() {
+          shard.computeIDFandDocumentLengths(global);
+          return shard;
+        }
+      }));
+    }
+    for (Future<InvertedIndex> shard : done) {
+      awaitPartialIndex(shard);
+    }
+  }
+
+  @Override
+  public void setDynamicPruning(boolean dynamicPruning) {
+    super.setDynamicPruning(dynamicPruning);
+    for (InvertedIndex shard : shards) {
+      shard.setDynamicPruning(dynamicPruning);
+    }
+  }
+
+  @Override
+  public void setImpactOrdered(boolean impactOrdered) {
+    super.setImpactOrdered(impactOrdered);
+    for (InvertedIndex shard : shards) {
+      shard.setImpactOrdered(impactOrdered);
+    }
+  }
+
+  @Override
+  public void setApproximateImpactOrdered(boolean approximateImpactOrdered) {
+    super.setApproximateImpactOrdered(approximateImpactOrdered);
+    for (InvertedIndex shard : shards) {
+      shard.setApproximateImpactOrdered(approximateImpactOrdered);
+    }
+  }
+
+  @Override
+  public void setParallelScoring(boolean parallelScoring) {
+    super.setParallelScoring(parallelScoring);
+    for (InvertedIndex shard : shards) {
+      shard.setParallelScoring(parallelScoring);
+    }
+  }
+
+  @Override
+  public void setScoringPool(ForkJoinPool scoringPool) {
+    super.setScoringPool(scoringPool);
+    for (InvertedIndex shard : shards) {
+      shard.setScoringPool(scoringPool);
+    }
+  }
+
+  /**
+   * Retrieve the top k from every shard at once, each with the retrieval
+   * settings passed on to it, and merge them.
+   */
+  @Override
+  protected Retrieval[] retrieveUncached(HashMapVector vector, int k) {
+    return scatter(vector, k, false);
+  }
+
+  /**
+   * Score every document of every shard indexed under the tokens of the
+   * query, the shards at once, and merge their top k.
+   */
+  @Override
+  protected Retrieval[] scoreExhaustive(HashMapVector vector, int k) {
+    return scatter(vector, k, true);
+  }
+
+  /**
+   * Retrieve the top k of a query from every shard, the first on this
+   * thread and the others on the executor's, and merge them.
+   *
+   * @param exhaustive Whether every shard scores every document rather than
+   *                   retrieving as its settings say.
+   */
+  protected Retrieval[] scatter(final HashMapVector vector, final int k, final boolean exhaustive) {
+    List<Future<Retrieval[]>> futures = new ArrayList<Future<Retrieval[]>>();
+    for (int s = 1; s < shards.length; s++) {
+      final InvertedIndex shard = shards[s];
+      futures.add(executor.submit(new Callable<Retrieval[]>() {
+        public Retrieval[] call() {
+          return exhaustive ? shard.retrieveExhaustive(vector, k) : shard.retrieve(vector, k);
+        }
+      }));
+    }
+    Retrieval[][] results = new Retrieval[shards.length][];
+    results[0] = exhaustive ? shards[0].retrieveExhaustive(vector, k) : shards[0].retrieve(vector, k);
+    for (int s = 1; s < shards.length; s++) {
+      results[s] = await(futures.get(s - 1));
+    }
+    // A shard normalizes scores by the length of the query over the tokens
+    // it indexes, so rescale them to its length over those any shard indexes.
+    // The shard's Retrievals may be in its query cache, so are left as they are.
+    double queryLength = queryLength(vector, null);
+    for (int s = 0; s < shards.length; s++) {
+      double shardLength = queryLength(vector, shards[s]);
+      if (shardLength != queryLength) {
+        Retrieval[] rescaled = new Retrieval[results[s].length];
+        for (int i = 0; i < rescaled.length; i++) {
+          Retrieval retrieval = results[s][i];
+          rescaled[i] = new Retrieval(retrieval.docRef, retrieval.score * shardLength / queryLength);
+        }
+        results[s] = rescaled;
+      }
+    }
+    return mergeTopK(results, k);
+  }
+
+  /**
+   * Return the length of a query vector weighted by the IDF of its tokens
+   * across all the shards, counting only the tokens indexed in the given
+   * shard, or in any if it is null.
+   */
+  protected double queryLength(HashMapVector vector, InvertedIndex shard) {
+    double length = 0.0;
+    for (int i = 0; i < vector.size(); i++) {
+      int termId = vector.termIdAt(i);
+      double idf = global.idf(termId);
+      if (idf != 0.0 && !Double.isNaN(idf) && (shard == null || shard.getTokenInfo(termId) != null)) {
+        double weight = idf * vector.weightAt(i);
+        length = length + weight * weight;
+      }
+    }
+    return Math.sqrt(length);
+  }
+
+  /**
+   * Merge the rankings of the shards, each from best to worst, into the k
+   * best of all.  Of documents with the same score, those of earlier
+   * shards come first.
+   */
+  protected static Retrieval[] mergeTopK(Retrieval[][] results, int k) {
+    int total = 0;
+    for (Retrieval[] result : results) {
+      total = total + result.length;
+    }
+    Retrieval[] merged = new Retrieval[Math.min(k, total)];
+    // The position in each shard's ranking of its best not yet merged
+    int[] next = new int[results.length];
+    for (int i = 0; i < merged.length; i++) {
+      int best = -1;
+      for (int s = 0; s < results.length; s++) {
+        if (next[s] < results[s].length &&
+            (best < 0 || results[s][next[s]].score > results[best][next[best]].score))
+          best = s;
+      }
+      merged[i] = results[best][next[best]++];
+    }
+    return merged;
+  }
+
+  /**
+   * Wait for a shard's retrievals, rethrowing any exception thrown while
+   * retrieving them.
+   */
+  protected static Retrieval[] await(Future<Retrieval[]> retrievals) {
+    try {
+      return retrievals.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while retrieving", e);
+    }
+    catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IllegalStateException("Failed retrieving", e.getCause());
+    }
+  }
+
+  /**
+   * Return the number of tokens indexed in any shard
+   */
+  @Override
+  public int size() {
+    return numGlobalTerms;
+  }
+
+  /**
+   * Print out every shard's index in turn.
+   */
+  @Override
+  public void print() {
+    for (InvertedIndex shard : shards) {
+      shard.print();
+    }
+  }
+
+  /**
+   * A sharded index cannot be changed.
+   */
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException("A ShardedIndex cannot be changed");
+  }
+
+  /**
+   * A sharded index cannot be appended to.
+   */
+  @Override
+  public void addDocuments(Iterator<TextStringDocument> docs) {
+    throw new UnsupportedOperationException("A ShardedIndex cannot be appended to");
+  }
+
+  /**
+   * A sharded index cannot have documents deleted.
+   */
+  @Override
+  public boolean deleteDocument(String name) {
+    throw new UnsupportedOperationException("A ShardedIndex cannot have documents deleted");
+  }
+
+  /**
+   * A sharded index cannot have documents replaced.
+   */
+  @Override
+  public void replaceDocument(TextStringDocument doc) {
+    throw new UnsupportedOperationException("A ShardedIndex cannot have documents replaced");
+  }
+
+  /**
+   * A sharded index cannot keep lazy statistics, as nothing is appended to it.
+   */
+  @Override
+  public void setLazyStatistics(boolean lazy) {
+    throw new UnsupportedOperationException("A ShardedIndex cannot keep lazy statistics");
+  }
+
+  /**
+   * A sharded index has no appended segments to merge.
+   */
+  @Override
+  public void mergeSegments() {
+    throw new UnsupportedOperationException("A ShardedIndex cannot be merged");
+  }
+
+  /**
+   * A sharded index has no appended segments to merge.
+   */
+  @Override
+  public void mergeByPolicy() {
+    throw new UnsupportedOperationException("A ShardedIndex cannot be merged");
+  }
+
+  /**
+   * A sharded index has no appended segments to merge in the background.
+   */
+  @Override
+  public synchronized void scheduleMerges(long period) {
+    throw new UnsupportedOperationException("A ShardedIndex cannot be merged");
+  }
+
+  /**
+   * A sharded index cannot be saved in one file.
+   */
+  @Override
+  public void save(File file) throws IOException {
+    throw new UnsupportedOperationException("A ShardedIndex cannot be saved");
+  }
+
+  /**
+   * Stop the threads the shards are queried on, once queries already begun
+   * are done.  The index cannot be queried afterwards.
+   */
+  public void close() {
+    executor.shutdown();
+  }
+}
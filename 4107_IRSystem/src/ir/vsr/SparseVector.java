@@ -0,0 +1,186 @@
+package ir.vsr;
+
+import java.util.*;
+
+/**
+ * An immutable term vector for comparing documents: the ids of its tokens
+ * in TermDictionary.GLOBAL in increasing order, with their weights.  Its
+ * length and largest weight are computed once when it is made, and the dot
+ * product of two vectors is a single merge of their sorted ids, with no
+ * hashing, so comparing one vector to many others costs only the merges.
+ * <p/>
+ * Build one from a HashMapVector once the vector is complete; use the
+ * HashMapVector while weights are still being accumulated.
+ */
+
+public class SparseVector {
+  /**
+   * When one vector has this many times more tokens than the other, their
+   * dot product is found by galloping search of the longer one for each
+   * token of the shorter rather than by stepping through both
+   */
+  protected static final int GALLOP_RATIO = 8;
+
+  /**
+   * The ids of the tokens in the vector, in increasing order
+   */
+  protected final int[] termIds;
+
+  /**
+   * The weight of each token in termIds
+   */
+  protected final double[] weights;
+
+  /**
+   * The Euclidian length of the vector
+   */
+  protected final double length;
+
+  /**
+   * The largest weight of any token in the vector
+   */
+  protected final double maxWeight;
+
+  /**
+   * Create a vector with the tokens and weights of a HashMapVector
+   */
+  public SparseVector(HashMapVector vector) {
+    int size = vector.size();
+    // Sort the positions of the tokens by id, packing each id and position
+    // into a long so that a primitive sort orders them
+    long[] order = new long[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = ((long) vector.termIdAt(i) << 32) | i;
+    }
+    Arrays.sort(order);
+    termIds = new int[size];
+    weights = new double[size];
+    double sum = 0.0;
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < size; i++) {
+      int position = (int) order[i];
+      termIds[i] = (int) (order[i] >>> 32);
+      weights[i] = vector.weightAt(position);
+      sum += weights[i] * weights[i];
+      if (weights[i] > max)
+        max = weights[i];
+    }
+    length = Math.sqrt(sum);
+    maxWeight = max;
+  }
+
+  /**
+   * Returns the number of tokens in the vector.
+   */
+  public int size() {
+    return termIds.length;
+  }
+
+  /**
+   * Return the id of the token at the given position, from 0 up to size(),
+   * in increasing order of id
+   */
+  public int termIdAt(int position) {
+    return termIds[position];
+  }
+
+  /**
+   * Return the weight of the token at the given position, from 0 up to size()
+   */
+  public double weightAt(int position) {
+    return weights[position];
+  }
+
+  /**
+   * Return the weight of the token with the given id in the vector
+   */
+  public double getWeight(int termId) {
+    int position = Arrays.binarySearch(termIds, termId);
+    return position < 0 ? 0.0 : weights[position];
+  }
+
+  /**
+   * Return the Euclidian length (sqrt of sum of squares) of the vector
+   */
+  public double length() {
+    return length;
+  }
+
+  /**
+   * Returns the maximum weight of any token in the vector.
+   */
+  public double maxWeight() {
+    return maxWeight;
+  }
+
+  /**
+   * Return the dot product of this vector with another
+   */
+  public double dot(SparseVector other) {
+    if (size() > other.size())
+      return other.dot(this);
+    if (size() * GALLOP_RATIO < other.size())
+      return gallopingDot(other);
+    int[] otherIds = other.termIds;
+    double dotProd = 0.0;
+    int i = 0;
+    int j = 0;
+    while (i < termIds.length && j < otherIds.length) {
+      int termId = termIds[i];
+      int otherId = otherIds[j];
+      if (termId == otherId)
+        dotProd += weights[i] * other.weights[j];
+      // Step past the smaller id, or both if equal, without a branch to
+      // mispredict, since which vector holds the smaller id is random
+      i += termId <= otherId ? 1 : 0;
+      j += termId >= otherId ? 1 : 0;
+    }
+    return dotProd;
+  }
+
+  /**
+   * Return the dot product of this vector with a much longer one, finding
+   * each token of this one in the other by doubling the step from the last
+   * token found until it is passed, then binary searching the last step.
+   */
+  protected double gallopingDot(SparseVector other) {
+    int[] otherIds = other.termIds;
+    double dotProd = 0.0;
+    int low = 0;
+    for (int i = 0; i < termIds.length && low < otherIds.length; i++) {
+      int termId = termIds[i];
+      int step = 1;
+      int high = low;
+      while (high < otherIds.length && otherIds[high] < termId) {
+        low = high + 1;
+        high = high + step;
+        step = step << 1;
+      }
+      int position = Arrays.binarySearch(otherIds, low, Math.min(high + 1, otherIds.length), termId);
+      if (position >= 0) {
+        dotProd += weights[i] * other.weights[position];
+        low = position + 1;
+      } else
+        low = -position - 1;
+    }
+    return dotProd;
+  }
+
+  /**
+   * Computes cosine of angle to otherVector.
+   */
+  public double cosineTo(SparseVector otherVector) {
+    return dot(otherVector) / (length * otherVector.length);
+  }
+
+  /**
+   * Return String of the vector showing the tokens and their weights
+   */
+  public String toString() {
+    StringBuilder ret = new StringBuilder();
+    for (int i = 0; i < termIds.length; i++) {
+      ret.append(TermDictionary.GLOBAL.term(termIds[i])).append(": ").append(weights[i]).append(' ');
+    }
+    return ret.toString();
+  }
+}
@@ -0,0 +1,93 @@
+package ir.vsr;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A dictionary assigning a dense int id to every distinct term (token), in
+ * the order the terms are first seen, so that the index, term vectors and
+ * classifiers can work on ids and hash and compare strings only once, when
+ * a document is tokenized.  The term of an id is kept for display.
+ * <p/>
+ * Ids are shared by everything built in the same JVM through the GLOBAL
+ * dictionary, and are never reused or forgotten, so they are only
+ * meaningful within one run; index files store terms, not ids.  Ids are
+ * only assigned as documents are indexed or loaded; queries look their
+ * terms up, so that they do not grow the dictionary without bound.  Safe for
+ * several threads at once: looking up a term that already has an id takes
+ * no lock.
+ */
+
+public class TermDictionary {
+
+  /**
+   * The dictionary shared by all documents, vectors and indexes
+   */
+  public static final TermDictionary GLOBAL = new TermDictionary();
+
+  /**
+   * The id of each term
+   */
+  protected final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * The term of each id.  Replaced by a longer copy when full, and always
+   * written before the new id is published in ids, so any thread that has
+   * an id can read its term.
+   */
+  protected volatile String[] terms = new String[1024];
+
+  /**
+   * The number of ids assigned
+   */
+  protected volatile int size = 0;
+
+  /**
+   * Return the id of a term, assigning it the next id if it has none yet.
+   */
+  public int id(String term) {
+    Integer id = ids.get(term);
+    if (id != null)
+      return id;
+    return assign(term);
+  }
+
+  /**
+   * Return the id of a term, or -1 if it has none, without assigning one.
+   */
+  public int lookup(String term) {
+    Integer id = ids.get(term);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Assign the next id to a term, unless another thread just has
+   */
+  protected synchronized int assign(String term) {
+    Integer id = ids.get(term);
+    if (id != null)
+      return id;
+    String[] terms = this.terms;
+    if (size == terms.length)
+      terms = Arrays.copyOf(terms, 2 * size);
+    terms[size] = term;
+    this.terms = terms;
+    int newId = size++;
+    ids.put(term, newId);
+    return newId;
+  }
+
+  /**
+   * Return the term with the given id
+   */
+  public String term(int id) {
+    return terms[id];
+  }
+
+  /**
+   * Return the number of ids assigned, one more than the largest id
+   */
+  public int size() {
+    return size;
+  }
+}
@@ -11,31 +11,31 @@ import java.util.*;
 public class TextStringDocument extends Document {
 
   /**
-   * StringTokenizer delim for tokenizing only alphabetic strings.
+   * Delimiters for tokenizing only alphabetic strings.
    */
-  public static final String tokenizerDelim = " \t\n\r\f\'\"\\1234567890!@#$%^&*()_+-={}|[]:;<,>.?/`~";
+  public static final String tokenizerDelim = CharTokenizer.DELIMITERS;
 
   /**
-   * The tokenizer for this document.
+   * The name of this document, or null if it has none
    */
-  protected StringTokenizer tokenizer = null;
+  public String name = null;
 
   /**
    * Create a simple Document for this string
    */
   public TextStringDocument(String string, boolean stem) {
     super(stem);
-    this.tokenizer = new StringTokenizer(string, tokenizerDelim);
+    this.tokenizer = new CharTokenizer(string);
     prepareNextToken();
   }
 
   /**
-   * Get the next token from this string
+   * Create a simple Document for this string with the given name, by
+   * which it is known when indexed
    */
-  protected String getNextCandidateToken() {
-    if (tokenizer == null || !tokenizer.hasMoreTokens())
-      return null;
-    return tokenizer.nextToken();
+  public TextStringDocument(String name, String string, boolean stem) {
+    this(string, stem);
+    this.name = name;
   }
 
   /**
@@ -5,11 +5,25 @@ import java.util.*;
 /**
  * A lightweight object for storing information about a token (a.k.a word, term)
  * in an inverted index.
+ * <p/>
+ * While an index is being built the postings for the token are kept as two
+ * growing parallel primitive arrays, the dense ids (positions in the index's
+ * docRefs list) of the documents in which it occurs, in increasing order, and
+ * the number of times it occurs in each.  Once the index is complete they are
+ * frozen into a compressed form: blocks of BLOCK_SIZE postings, each holding
+ * the gaps between successive doc ids followed by the counts, all in
+ * variable-byte code.  The last doc id and the offset of every block are
+ * kept so that readers can skip whole blocks without decoding them.
  *
  * @author Ray Mooney
  */
 
 public class TokenInfo {
+  /**
+   * The number of postings in each compressed block
+   */
+  public static final int BLOCK_SIZE = 128;
+
   /**
    * The IDF (inverse document frequency) factor for this token
    * which indicates how much to weight an occurence. Tokens that
@@ -19,16 +33,282 @@ public class TokenInfo {
   public double idf;
 
   /**
-   * A list of TokenOccurences giving documents where this
-   * token occurs
+   * While building, the ids of the documents where this token occurs, in
+   * increasing order.  Only the first numDocs entries are valid.  Null once frozen.
+   */
+  public int[] docIds;
+
+  /**
+   * While building, the number of times the token occurs in the corresponding
+   * document in docIds.  Null once frozen.
+   */
+  public int[] tfs;
+
+  /**
+   * Once frozen, the compressed blocks of postings
+   */
+  public byte[] postings;
+
+  /**
+   * Once frozen, the last doc id in each block
+   */
+  public int[] blockLastDocIds;
+
+  /**
+   * Once frozen, the offset in postings where each block starts
+   */
+  public int[] blockOffsets;
+
+  /**
+   * The number of documents in which this token occurs
+   */
+  public int numDocs;
+
+  /**
+   * The largest weight (IDF * occurrence count) of this token in any document
+   * divided by the length of that document's vector.  Bounds the contribution
+   * of this token to the cosine similarity of any document to a query.
+   */
+  public double maxImpact = 0.0;
+
+  /**
+   * The largest number of times this token occurs in any one document
+   */
+  public int maxCount = 0;
+
+  /**
+   * The postings sorted by impact, made when impact-ordered retrieval first
+   * needs them, or null
    */
-  public List<TokenOccurrence> occList;
+  protected volatile ImpactPostings impactPostings = null;
 
   /**
    * Create an initially empty data structure
    */
   public TokenInfo() {
-    occList = new ArrayList<TokenOccurrence>();
+    docIds = new int[4];
+    tfs = new int[4];
+    numDocs = 0;
     idf = 0.0;
   }
+
+  /**
+   * Create info sharing the frozen postings of another, and its IDF and
+   * bounds until it is given its own, as when the documents they index are
+   * counted among more.
+   */
+  public TokenInfo(TokenInfo frozen) {
+    postings = frozen.postings;
+    blockLastDocIds = frozen.blockLastDocIds;
+    blockOffsets = frozen.blockOffsets;
+    numDocs = frozen.numDocs;
+    idf = frozen.idf;
+    maxImpact = frozen.maxImpact;
+    maxCount = frozen.maxCount;
+  }
+
+  /**
+   * Add an occurrence of this token in a document whose id is greater than
+   * that of any document already added.
+   *
+   * @param docId The dense id of the document.
+   * @param count The number of times the token occurs in the document.
+   */
+  public void addOccurrence(int docId, int count) {
+    if (numDocs == docIds.length) {
+      // Grow both arrays by half again their size
+      int capacity = numDocs + (numDocs >> 1) + 1;
+      docIds = Arrays.copyOf(docIds, capacity);
+      tfs = Arrays.copyOf(tfs, capacity);
+    }
+    docIds[numDocs] = docId;
+    tfs[numDocs] = count;
+    numDocs++;
+  }
+
+  /**
+   * Add all the occurrences of the same token in another partial index,
+   * whose doc ids start at docIdOffset in this one and are all greater than
+   * those of any document already added.  The other's postings may be frozen.
+   */
+  public void addOccurrences(TokenInfo other, int docIdOffset) {
+    if (numDocs + other.numDocs > docIds.length) {
+      // Grow both arrays by at least half again their size, as many partial
+      // indexes may be added in turn
+      int capacity = Math.max(numDocs + other.numDocs, numDocs + (numDocs >> 1) + 1);
+      docIds = Arrays.copyOf(docIds, capacity);
+      tfs = Arrays.copyOf(tfs, capacity);
+    }
+    if (other.isFrozen()) {
+      int[] blockDocIds = new int[BLOCK_SIZE];
+      int[] blockTfs = new int[BLOCK_SIZE];
+      for (int block = 0; block < other.numBlocks(); block++) {
+        int count = other.decodeBlock(block, blockDocIds, blockTfs);
+        for (int i = 0; i < count; i++) {
+          docIds[numDocs + i] = blockDocIds[i] + docIdOffset;
+        }
+        System.arraycopy(blockTfs, 0, tfs, numDocs, count);
+        numDocs = numDocs + count;
+      }
+      return;
+    }
+    for (int i = 0; i < other.numDocs; i++) {
+      docIds[numDocs + i] = other.docIds[i] + docIdOffset;
+    }
+    System.arraycopy(other.tfs, 0, tfs, numDocs, other.numDocs);
+    numDocs = numDocs + other.numDocs;
+  }
+
+  /**
+   * Return true once the postings have been compressed
+   */
+  public boolean isFrozen() {
+    return postings != null;
+  }
+
+  /**
+   * Compress the postings once no more occurrences will be added.
+   */
+  public void freeze() {
+    if (isFrozen())
+      return;
+    int numBlocks = numBlocks();
+    blockLastDocIds = new int[numBlocks];
+    blockOffsets = new int[numBlocks];
+    // A variable-byte code takes at most 5 bytes for each gap and count
+    byte[] bytes = new byte[10 * numDocs];
+    int offset = 0;
+    int lastDocId = 0;
+    for (int block = 0; block < numBlocks; block++) {
+      int start = block * BLOCK_SIZE;
+      int end = Math.min(start + BLOCK_SIZE, numDocs);
+      blockOffsets[block] = offset;
+      for (int i = start; i < end; i++) {
+        offset = writeVByte(docIds[i] - lastDocId, bytes, offset);
+        lastDocId = docIds[i];
+      }
+      for (int i = start; i < end; i++) {
+        offset = writeVByte(tfs[i], bytes, offset);
+      }
+      blockLastDocIds[block] = lastDocId;
+    }
+    postings = Arrays.copyOf(bytes, offset);
+    docIds = null;
+    tfs = null;
+  }
+
+  /**
+   * Return the number of blocks of postings
+   */
+  public int numBlocks() {
+    return (numDocs + BLOCK_SIZE - 1) / BLOCK_SIZE;
+  }
+
+  /**
+   * Return the last doc id in a block of postings
+   */
+  public int blockLastDocId(int block) {
+    if (isFrozen())
+      return blockLastDocIds[block];
+    return docIds[Math.min((block + 1) * BLOCK_SIZE, numDocs) - 1];
+  }
+
+  /**
+   * Decode a block of postings into the given buffers, which must hold at
+   * least BLOCK_SIZE entries.
+   *
+   * @return The number of postings in the block.
+   */
+  public int decodeBlock(int block, int[] docIdBuffer, int[] tfBuffer) {
+    int start = block * BLOCK_SIZE;
+    int count = Math.min(BLOCK_SIZE, numDocs - start);
+    if (!isFrozen()) {
+      System.arraycopy(docIds, start, docIdBuffer, 0, count);
+      System.arraycopy(tfs, start, tfBuffer, 0, count);
+      return count;
+    }
+    byte[] bytes = postings;
+    int offset = blockOffsets[block];
+    // Gaps in the first block are from doc id 0, later ones from the previous block
+    int docId = block == 0 ? 0 : blockLastDocIds[block - 1];
+    for (int i = 0; i < count; i++) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[offset++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+      docId += value;
+      docIdBuffer[i] = docId;
+    }
+    for (int i = 0; i < count; i++) {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = bytes[offset++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      }
+      while (b < 0);
+      tfBuffer[i] = value;
+    }
+    return count;
+  }
+
+  /**
+   * Return the number of bytes taken by the frozen postings and their block tables
+   */
+  public int compressedSize() {
+    return postings.length + 8 * blockOffsets.length;
+  }
+
+  /**
+   * Return a cursor for visiting the postings of this token in doc id order
+   */
+  public PostingsCursor cursor() {
+    return new PostingsCursor(this);
+  }
+
+  /**
+   * Return the postings of this token sorted by impact, sorting them the
+   * first time.  Safe for several threads at once; if two sort them at the
+   * same time, both get the same order.
+   *
+   * @param docRefs The indexed documents, with their vector lengths computed.
+   */
+  public ImpactPostings impactPostings(List<DocumentReference> docRefs) {
+    ImpactPostings sorted = impactPostings;
+    if (sorted == null) {
+      sorted = new ImpactPostings(this, docRefs);
+      impactPostings = sorted;
+    }
+    return sorted;
+  }
+
+  /**
+   * Discard the postings sorted by impact, as when the IDF or the lengths
+   * of the documents change
+   */
+  public void clearImpactPostings() {
+    impactPostings = null;
+  }
+
+  /**
+   * Write a non-negative int in variable-byte code: 7 bits per byte, low-order
+   * bits first, with the high bit set on every byte but the last.
+   *
+   * @return The offset just past the bytes written.
+   */
+  protected static int writeVByte(int value, byte[] bytes, int offset) {
+    while ((value & ~0x7F) != 0) {
+      bytes[offset++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    bytes[offset++] = (byte) value;
+    return offset;
+  }
 }